@@ -0,0 +1,21 @@
+// The original checksum: the seq and ack fields plus the sum of the
+// payload bytes
+public class AdditiveChecksum implements ChecksumEngine
+{
+    public static final String NAME = "additive";
+
+    public int compute(int seqnum, int acknum, byte[] payload)
+    {
+        int checksum = seqnum + acknum;
+        for (int i = 0; i < payload.length; i++)
+        {
+            checksum += payload[i];
+        }
+        return checksum;
+    }
+
+    public String getName()
+    {
+        return NAME;
+    }
+}
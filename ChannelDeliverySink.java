@@ -0,0 +1,52 @@
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+// Writes to a file through a FileChannel, gathering messages in a large
+// direct buffer so the disk sees a few big writes
+public class ChannelDeliverySink implements DeliverySink
+{
+    public static final String NAME = "file";
+
+    private static final int BUFFER_SIZE = 1 << 20;
+
+    private FileChannel channel;
+    private ByteBuffer buffer;
+
+    public ChannelDeliverySink(String path) throws IOException
+    {
+        channel = FileChannel.open(Paths.get(path),
+                                   StandardOpenOption.CREATE,
+                                   StandardOpenOption.WRITE,
+                                   StandardOpenOption.TRUNCATE_EXISTING);
+        buffer = ByteBuffer.allocateDirect(BUFFER_SIZE);
+    }
+
+    public void deliver(byte[] data, int length) throws IOException
+    {
+        if (buffer.remaining() < length + 1)
+        {
+            flush();
+        }
+        buffer.put(data, 0, length);
+        buffer.put((byte)'\n');
+    }
+
+    public void close() throws IOException
+    {
+        flush();
+        channel.close();
+    }
+
+    private void flush() throws IOException
+    {
+        buffer.flip();
+        while (buffer.hasRemaining())
+        {
+            channel.write(buffer);
+        }
+        buffer.clear();
+    }
+}
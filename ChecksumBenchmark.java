@@ -0,0 +1,73 @@
+// Compares the checksum engines: how long each takes per packet, and how
+// many packets damaged by the toLayer3 corruption model each one catches.
+//
+// Usage: java ChecksumBenchmark [packets] [seed]
+public class ChecksumBenchmark
+{
+    private static final int ROUNDS = 5;
+
+    // Results are stored here so the JIT cannot drop the timed loop
+    private static volatile int sink;
+
+    public static void main(String[] argv)
+    {
+        int n = (argv.length > 0) ? Integer.parseInt(argv[0]) : 1000000;
+        int seed = (argv.length > 1) ? Integer.parseInt(argv[1]) : 1;
+
+        ChecksumEngine[] engines = {
+            new AdditiveChecksum(),
+            new InternetChecksum(),
+            new Crc32cChecksum()
+        };
+
+        // Packets like the ones the simulator sends: a run of one letter
+        int[] seqs = new int[n];
+        byte[][] payloads = new byte[n][];
+        for (int i = 0; i < n; i++)
+        {
+            seqs[i] = i % 16;
+            payloads[i] = new byte[NetworkSimulator.MAXDATASIZE];
+            java.util.Arrays.fill(payloads[i], (byte)((i % 26) + 97));
+        }
+
+        System.out.println("engine      ns/packet   detected/corrupted");
+        for (ChecksumEngine engine : engines)
+        {
+            // First rounds warm up the JIT; keep the best of the rest
+            long best = Long.MAX_VALUE;
+            for (int r = 0; r < ROUNDS; r++)
+            {
+                int sum = 0;
+                long start = System.nanoTime();
+                for (int i = 0; i < n; i++)
+                {
+                    sum += engine.compute(seqs[i], 0, payloads[i]);
+                }
+                long elapsed = System.nanoTime() - start;
+                sink = sum;
+                if (r > 0)
+                {
+                    best = Math.min(best, elapsed);
+                }
+            }
+
+            OSIRandom rand = new OSIRandom(seed);
+            int detected = 0;
+            for (int i = 0; i < n; i++)
+            {
+                int check = engine.compute(seqs[i], 0, payloads[i]);
+                Packet p = new Packet(seqs[i], 0, check, payloads[i]);
+                NetworkSimulator.corrupt(p, rand.nextDouble(4));
+                if (engine.compute(p.getSeqnum(), p.getAcknum(),
+                                   p.getPayloadBytes()) != p.getChecksum())
+                {
+                    detected++;
+                }
+            }
+
+            System.out.printf("%-10s %10.2f   %d/%d (%.4f)%n",
+                              engine.getName(), (double)best / n,
+                              detected, n, (double)detected / n);
+        }
+    }
+}
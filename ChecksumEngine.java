@@ -0,0 +1,29 @@
+// Computes the checksum carried in a packet from its seq and ack fields
+// and its payload.  Engines are chosen per run with -Dchecksum=<name> or
+// StudentNetworkSimulator.setChecksumEngine; "additive" is the default.
+public interface ChecksumEngine
+{
+    public static final String PROPERTY = "checksum";
+
+    public int compute(int seqnum, int acknum, byte[] payload);
+    public String getName();
+
+    public static ChecksumEngine forName(String name)
+    {
+        if (name.equals(InternetChecksum.NAME))
+        {
+            return new InternetChecksum();
+        }
+        else if (name.equals(Crc32cChecksum.NAME))
+        {
+            return new Crc32cChecksum();
+        }
+        else if (!name.equals(AdditiveChecksum.NAME))
+        {
+            System.out.println("Warning: unknown checksum \"" + name +
+                               "\", using " + AdditiveChecksum.NAME);
+        }
+
+        return new AdditiveChecksum();
+    }
+}
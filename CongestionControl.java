@@ -0,0 +1,46 @@
+// Decides how many packets A may have in flight, from the acks and
+// losses it sees.  Chosen per run with -Dcc=<name>; "fixed", the
+// default, always allows the whole window.  Windows are in packets and
+// never exceed the maximum given to forName, which is the window size
+// the sequence numbers were sized for.
+public interface CongestionControl
+{
+    public static final String PROPERTY = "cc";
+
+    // "acked" packets were newly acknowledged at "time"; "rtt" is the
+    // current estimate of the round trip
+    public void onAck(int acked, double time, double rtt);
+
+    // Loss detected by duplicate acks; the window is cut, not reset
+    public void onFastRetransmit(double time);
+
+    // Loss detected by a timeout
+    public void onTimeout(double time);
+
+    public int getWindow();
+
+    // The window before rounding down, and the slow start threshold
+    public double getCwnd();
+    public double getSsthresh();
+
+    public String getName();
+
+    public static CongestionControl forName(String name, int maxWindow)
+    {
+        if (name.equals(RenoControl.NAME))
+        {
+            return new RenoControl(maxWindow);
+        }
+        else if (name.equals(CubicControl.NAME))
+        {
+            return new CubicControl(maxWindow);
+        }
+        else if (!name.equals(FixedWindow.NAME))
+        {
+            System.out.println("Warning: unknown congestion control \"" +
+                               name + "\", using " + FixedWindow.NAME);
+        }
+
+        return new FixedWindow(maxWindow);
+    }
+}
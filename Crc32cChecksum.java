@@ -0,0 +1,33 @@
+import java.util.zip.CRC32C;
+
+// CRC-32C over the seq and ack fields (big-endian) and the payload.  The
+// JDK's CRC32C is intrinsified on most platforms.  Not thread-safe; each
+// simulator gets its own engine.
+public class Crc32cChecksum implements ChecksumEngine
+{
+    public static final String NAME = "crc32c";
+
+    private final CRC32C crc = new CRC32C();
+
+    public int compute(int seqnum, int acknum, byte[] payload)
+    {
+        crc.reset();
+        updateInt(seqnum);
+        updateInt(acknum);
+        crc.update(payload, 0, payload.length);
+        return (int)crc.getValue();
+    }
+
+    public String getName()
+    {
+        return NAME;
+    }
+
+    private void updateInt(int v)
+    {
+        crc.update(v >>> 24);
+        crc.update(v >>> 16);
+        crc.update(v >>> 8);
+        crc.update(v);
+    }
+}
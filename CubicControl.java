@@ -0,0 +1,75 @@
+// CUBIC congestion control (RFC 8312) on top of Reno's slow start.  After
+// a loss the window follows a cubic curve in time: it climbs quickly back
+// towards the window where the loss happened, levels off near it, then
+// probes beyond it, and it never grows slower than Reno would.  Time is
+// counted in round trips, since the simulator's time unit is arbitrary.
+public class CubicControl extends RenoControl
+{
+    public static final String NAME = "cubic";
+
+    private static final double C = 0.4;
+    private static final double BETA = 0.7;
+
+    // Window at the last loss, and when growth since then began
+    private double wMax;
+    private double epochStart;
+    private double k;
+
+    public CubicControl(int maxWindow)
+    {
+        super(maxWindow);
+        wMax = 0;
+        epochStart = -1;
+    }
+
+    public void onFastRetransmit(double time)
+    {
+        lost();
+        ssthresh = Math.max(cwnd * BETA, MIN_SSTHRESH);
+        cwnd = ssthresh;
+    }
+
+    public void onTimeout(double time)
+    {
+        lost();
+        ssthresh = Math.max(cwnd * BETA, MIN_SSTHRESH);
+        cwnd = 1;
+    }
+
+    private void lost()
+    {
+        wMax = cwnd;
+        epochStart = -1;
+    }
+
+    protected void increase(double time, double rtt)
+    {
+        if (epochStart < 0)
+        {
+            epochStart = time;
+            k = (wMax > cwnd) ? Math.cbrt((wMax - cwnd) / C) : 0;
+            wMax = Math.max(wMax, cwnd);
+        }
+
+        double t = (time - epochStart) / rtt;
+        double target = C * Math.pow(t - k, 3) + wMax;
+
+        // Never slower than Reno with the same decrease factor
+        double reno = wMax * BETA + 3 * (1 - BETA) / (1 + BETA) * t;
+        target = Math.max(target, reno);
+
+        if (target > cwnd)
+        {
+            cwnd += Math.min(target - cwnd, cwnd) / cwnd;
+        }
+        else
+        {
+            cwnd += 0.01 / cwnd;
+        }
+    }
+
+    public String getName()
+    {
+        return NAME;
+    }
+}
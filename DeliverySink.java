@@ -0,0 +1,38 @@
+import java.io.Closeable;
+import java.io.IOException;
+
+// Receives the messages B delivers to layer 5.  The file sinks write each
+// message followed by a newline, which is the OutputFile format.
+public interface DeliverySink extends Closeable
+{
+    public static final String PROPERTY = "sink";
+
+    // Delivers one message: the first "length" bytes of "data"
+    public void deliver(byte[] data, int length) throws IOException;
+
+    // Opens the sink called "name" (-Dsink=<name>), writing to "path" if
+    // it is a file sink
+    public static DeliverySink open(String name, String path)
+        throws IOException
+    {
+        if (name.equals(MappedDeliverySink.NAME))
+        {
+            return new MappedDeliverySink(path);
+        }
+        else if (name.equals(NullDeliverySink.NAME))
+        {
+            return new NullDeliverySink();
+        }
+        else if (name.equals(MemoryDeliverySink.NAME))
+        {
+            return new MemoryDeliverySink();
+        }
+        else if (!name.equals(ChannelDeliverySink.NAME))
+        {
+            System.out.println("Warning: unknown sink \"" + name +
+                               "\", using " + ChannelDeliverySink.NAME);
+        }
+
+        return new ChannelDeliverySink(path);
+    }
+}
@@ -18,7 +18,18 @@ public class Event
         time = t;
         type = ty;
         entity = ent;
-        packet = new Packet(p);
+        packet = p.isFrozen() ? p : new Packet(p);
+    }
+            
+    // Sets every field at once.  Unlike the constructor and setPacket,
+    // the packet is not copied; the event lists use this to hand out
+    // events without allocating.
+    public void set(double t, int ty, int ent, Packet p)
+    {
+        time = t;
+        type = ty;
+        entity = ent;
+        packet = p;
     }
             
     public boolean setTime(double t)
@@ -31,7 +42,8 @@ public class Event
     {
         if ((n != NetworkSimulator.TIMERINTERRUPT) &&
             (n != NetworkSimulator.FROMLAYER5) &&
-            (n != NetworkSimulator.FROMLAYER3))
+            (n != NetworkSimulator.FROMLAYER3) &&
+            (n != NetworkSimulator.TIMERWHEEL))
         {
             type = -1;
             return false;
@@ -41,10 +53,11 @@ public class Event
         return true;
     }
     
+    // Flow n's A and B are entities 2n and 2n+1; see
+    // NetworkSimulator.addFlow
     public boolean setEntity(int n)
     {
-        if ((n != NetworkSimulator.A) &&
-            (n != NetworkSimulator.B))
+        if (n < 0)
         {
             entity = -1;
             return false;
@@ -60,6 +73,10 @@ public class Event
         {
             packet = null;
         }        
+        else if (p.isFrozen())
+        {
+            packet = p;
+        }
         else
         {
             packet = new Packet(p.getSeqnum(), p.getAcknum(),
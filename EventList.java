@@ -1,8 +1,16 @@
 public interface EventList
 {
     public boolean add(Event e);
+    public boolean add(double time, int type, int entity, Packet p);
     public Event removeNext();
+    public boolean removeNext(Event into);
+    // Fills in "into" with the event removeNext would return, leaving it
+    // in the list
+    public boolean peekNext(Event into);
     public String toString();
     public Event removeTimer(int entity);
+    public boolean cancelTimer(int entity);
+    public boolean rescheduleTimer(int entity, double time);
     public double getLastPacketTime(int entityTo);
+    public int size();
 }
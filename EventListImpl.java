@@ -15,28 +15,78 @@ public class EventListImpl implements EventList
         return true;
     }
     
+    public boolean add(double time, int type, int entity, Packet p)
+    {
+        Event e = new Event(time, type, entity);
+        e.set(time, type, entity, p);
+        return add(e);
+    }
+    
     public Event removeNext()
     {
-        if (data.isEmpty())
+        int firstIndex = firstIndex();
+        if (firstIndex == -1)
         {
             return null;
         }
+        
+        Event next = (Event)data.elementAt(firstIndex);
+        data.removeElement(next);
+    
+        return next;
+    }
+    
+    public boolean peekNext(Event into)
+    {
+        int firstIndex = firstIndex();
+        if (firstIndex == -1)
+        {
+            return false;
+        }
+        
+        Event next = data.elementAt(firstIndex);
+        into.set(next.getTime(), next.getType(), next.getEntity(),
+                 next.getPacket());
+        return true;
+    }
+    
+    // The earliest event; among events at the same time the one for the
+    // lowest-numbered flow (entity / 2), then the first added
+    private int firstIndex()
+    {
+        if (data.isEmpty())
+        {
+            return -1;
+        }
     
         int firstIndex = 0;
         double first = ((Event)data.elementAt(firstIndex)).getTime();
+        int firstFlow = data.elementAt(firstIndex).getEntity() >> 1;
         for (int i = 0; i < data.size(); i++)
         {
-            if (((Event)data.elementAt(i)).getTime() < first)
+            Event e = (Event)data.elementAt(i);
+            if ((e.getTime() < first) ||
+                ((e.getTime() == first) && ((e.getEntity() >> 1) < firstFlow)))
             {
-                first = ((Event)data.elementAt(i)).getTime();
+                first = e.getTime();
+                firstFlow = e.getEntity() >> 1;
                 firstIndex = i;
             }
         }
-        
-        Event next = (Event)data.elementAt(firstIndex);
-        data.removeElement(next);
+        return firstIndex;
+    }
     
-        return next;
+    public boolean removeNext(Event into)
+    {
+        Event next = removeNext();
+        if (next == null)
+        {
+            return false;
+        }
+        
+        into.set(next.getTime(), next.getType(), next.getEntity(),
+                 next.getPacket());
+        return true;
     }
     
     public String toString()
@@ -70,6 +120,25 @@ public class EventListImpl implements EventList
             
     }
     
+    public boolean cancelTimer(int entity)
+    {
+        return removeTimer(entity) != null;
+    }
+    
+    public boolean rescheduleTimer(int entity, double time)
+    {
+        Event timer = removeTimer(entity);
+        
+        if (timer == null)
+        {
+            return false;
+        }
+        
+        timer.setTime(time);
+        data.addElement(timer);
+        return true;
+    }
+    
     public double getLastPacketTime(int entityTo)
     {
         double time = 0;
@@ -85,4 +154,9 @@ public class EventListImpl implements EventList
     
         return time;
     }
+    
+    public int size()
+    {
+        return data.size();
+    }
 }
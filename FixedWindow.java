@@ -0,0 +1,44 @@
+// No congestion control: the window never changes
+public class FixedWindow implements CongestionControl
+{
+    public static final String NAME = "fixed";
+
+    private int window;
+
+    public FixedWindow(int window)
+    {
+        this.window = window;
+    }
+
+    public void onAck(int acked, double time, double rtt)
+    {
+    }
+
+    public void onFastRetransmit(double time)
+    {
+    }
+
+    public void onTimeout(double time)
+    {
+    }
+
+    public int getWindow()
+    {
+        return window;
+    }
+
+    public double getCwnd()
+    {
+        return window;
+    }
+
+    public double getSsthresh()
+    {
+        return window;
+    }
+
+    public String getName()
+    {
+        return NAME;
+    }
+}
@@ -0,0 +1,136 @@
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Bursty loss and corruption after Gilbert and Elliott: the channel is in
+// a good or a bad state, and damages packets with a low chance in the
+// first and a high one in the second.  Before each packet it goes from
+// good to bad with chance p and from bad to good with chance r, so bad
+// spells last 1/r packets on average and the channel spends p / (p + r)
+// of the time in them.
+//
+// Set with -Dge.good and -Dge.bad (loss in each state, 0 and 1 by
+// default) and -Dge.r (0.25, for bursts of 4).  p is worked out so the
+// average loss rate is the simulator's; -Dge.p sets it instead.
+// -Dge.goodCorrupt and -Dge.badCorrupt set the chance that a packet
+// which is not lost is corrupted in each state; both default to the
+// simulator's corruption probability, which leaves corruption
+// independent of the state.  State changes and losses draw on random
+// stream 1, corruption on 3.
+public class GilbertElliottImpairment implements Impairment
+{
+    public static final String NAME = "gilbert";
+
+    public static final String P_PROPERTY = "ge.p";
+    public static final String R_PROPERTY = "ge.r";
+    public static final String GOOD_PROPERTY = "ge.good";
+    public static final String BAD_PROPERTY = "ge.bad";
+    public static final String GOOD_CORRUPT_PROPERTY = "ge.goodCorrupt";
+    public static final String BAD_CORRUPT_PROPERTY = "ge.badCorrupt";
+
+    public static final double DEFAULT_R = 0.25;
+
+    // Warnings already given, so a run of many flows gives each once
+    private static final Set<String> warned = ConcurrentHashMap.newKeySet();
+
+    private double p;
+    private double r;
+    private double goodLoss;
+    private double badLoss;
+    private double goodCorrupt;
+    private double badCorrupt;
+
+    private boolean bad;
+
+    public GilbertElliottImpairment(double loss, double corrupt)
+    {
+        goodLoss = SimulatorProperties.getDouble(GOOD_PROPERTY, 0);
+        badLoss = SimulatorProperties.getDouble(BAD_PROPERTY, 1);
+        r = SimulatorProperties.getDouble(R_PROPERTY, DEFAULT_R);
+        goodCorrupt = SimulatorProperties.getDouble(GOOD_CORRUPT_PROPERTY,
+                                                    corrupt);
+        badCorrupt = SimulatorProperties.getDouble(BAD_CORRUPT_PROPERTY,
+                                                   corrupt);
+
+        if ((r <= 0) || (r > 1) || !isChance(goodLoss) || !isChance(badLoss) ||
+            !isChance(goodCorrupt) || !isChance(badCorrupt))
+        {
+            throw new IllegalArgumentException("bad Gilbert-Elliott " +
+                                               "parameters: r " + r +
+                                               ", loss " + goodLoss + "/" +
+                                               badLoss + ", corruption " +
+                                               goodCorrupt + "/" + badCorrupt);
+        }
+
+        if (System.getProperty(P_PROPERTY) != null)
+        {
+            p = SimulatorProperties.getDouble(P_PROPERTY, 0);
+            if (!isChance(p))
+            {
+                throw new IllegalArgumentException("bad Gilbert-Elliott " +
+                                                   "p: " + p);
+            }
+        }
+        else
+        {
+            p = solveP(loss);
+        }
+        bad = false;
+    }
+
+    // The p that gives an average loss rate of "loss", or the nearest one
+    // there is, with a warning
+    private double solveP(double loss)
+    {
+        // The share of time in the bad state that gives the average loss
+        double share = (badLoss != goodLoss)
+                       ? (loss - goodLoss) / (badLoss - goodLoss) : 0;
+
+        // p = share r / (1 - share) can be at most 1, which caps the share
+        double most = 1 / (1 + r);
+        double reached = Math.max(0, Math.min(share, most));
+        double p = (reached > 0) ? Math.min(reached * r / (1 - reached), 1)
+                                 : 0;
+
+        double average = goodLoss + reached * (badLoss - goodLoss);
+        if (Math.abs(average - loss) > 1e-9)
+        {
+            warn("Warning: Gilbert-Elliott loss rate " + loss + " cannot " +
+                 "be reached with " + GOOD_PROPERTY + "=" + goodLoss + ", " +
+                 BAD_PROPERTY + "=" + badLoss + " and " + R_PROPERTY + "=" +
+                 r + "; using " + P_PROPERTY + "=" + p + " for a rate of " +
+                 average);
+        }
+        return p;
+    }
+
+    public boolean isLost(double time, OSIRandom rand)
+    {
+        double x = rand.nextDouble(1);
+        bad = bad ? (x >= r) : (x < p);
+        return rand.nextDouble(1) < (bad ? badLoss : goodLoss);
+    }
+
+    // In the state the packet was just found not lost in
+    public boolean isCorrupted(double time, OSIRandom rand)
+    {
+        return rand.nextDouble(3) < (bad ? badCorrupt : goodCorrupt);
+    }
+
+    public String getName()
+    {
+        return NAME;
+    }
+
+    private static boolean isChance(double x)
+    {
+        return (x >= 0) && (x <= 1);
+    }
+
+    private static void warn(String message)
+    {
+        if (warned.add(message))
+        {
+            System.out.println(message);
+        }
+    }
+}
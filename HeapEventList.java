@@ -0,0 +1,422 @@
+import java.util.Arrays;
+
+// A binary min-heap of events ordered by time.  Events with equal times
+// come out by flow (entity / 2), then in the order they were added, which
+// is the same order the linear scan in EventListImpl produces, so both
+// give identical runs.  A run with one flow is ordered by time and then
+// by when events were added.
+//
+// Events are not kept as Event objects.  Their fields live in parallel
+// arrays indexed by slot, the heap holds slot numbers, and freed slots
+// are reused, so once the arrays have grown to the working set, adding
+// and removing events through the primitive methods allocates nothing.
+// Event objects are only built for the older Event-based methods.
+//
+// Each entity's timer is tracked by its slot, so stopping, starting and
+// re-arming a timer costs O(log n) instead of a full scan.
+// getLastPacketTime scans, since the links now track arrival times
+// themselves and nothing on the event path calls it.
+public class HeapEventList implements EventList
+{
+    private static final int INITIAL_CAPACITY = 64;
+
+    // Per-slot event fields
+    private double[] time;
+    private int[] type;
+    private int[] entity;
+    private Packet[] packet;
+    private long[] order;
+    private int[] heapPos;
+
+    // Unused slots
+    private int[] free;
+    private int freeCount;
+
+    // Slots ordered as a heap
+    private int[] heap;
+    private int size;
+    private long nextOrder;
+
+    // Slot of each entity's timer, or -1.  Only valid while the entity
+    // has exactly one pending timer; otherwise we fall back to a scan,
+    // which never happens when timers go through NetworkSimulator.
+    private int[] timerSlot;
+    private int[] timerCount;
+
+    public HeapEventList()
+    {
+        time = new double[INITIAL_CAPACITY];
+        type = new int[INITIAL_CAPACITY];
+        entity = new int[INITIAL_CAPACITY];
+        packet = new Packet[INITIAL_CAPACITY];
+        order = new long[INITIAL_CAPACITY];
+        heapPos = new int[INITIAL_CAPACITY];
+        heap = new int[INITIAL_CAPACITY];
+        free = new int[INITIAL_CAPACITY];
+        for (int i = 0; i < INITIAL_CAPACITY; i++)
+        {
+            free[i] = INITIAL_CAPACITY - 1 - i;
+        }
+        freeCount = INITIAL_CAPACITY;
+        size = 0;
+        nextOrder = 0;
+
+        timerSlot = new int[2];
+        timerCount = new int[2];
+        Arrays.fill(timerSlot, -1);
+    }
+
+    public boolean add(Event e)
+    {
+        return add(e.getTime(), e.getType(), e.getEntity(), e.getPacket());
+    }
+
+    public boolean add(double t, int ty, int ent, Packet p)
+    {
+        return add(t, ty, ent, p, nextOrder++);
+    }
+
+    // Reserves a place in the order of events added, for an event that
+    // can only be added later with add(t, ty, ent, p, order).  Among
+    // events for the same flow at the same time it then comes out as if
+    // it had been added now.
+    public long reserveOrder()
+    {
+        return nextOrder++;
+    }
+
+    public boolean add(double t, int ty, int ent, Packet p, long ord)
+    {
+        if (freeCount == 0)
+        {
+            grow();
+        }
+
+        int s = free[--freeCount];
+        time[s] = t;
+        type[s] = ty;
+        entity[s] = ent;
+        packet[s] = p;
+        order[s] = ord;
+
+        heap[size] = s;
+        heapPos[s] = size;
+        size++;
+
+        if (ty == NetworkSimulator.TIMERINTERRUPT)
+        {
+            addTimer(ent, s);
+        }
+        siftUp(size - 1);
+        return true;
+    }
+
+    public Event removeNext()
+    {
+        Event next = new Event(0, 0, 0);
+        if (!removeNext(next))
+        {
+            return null;
+        }
+
+        return next;
+    }
+
+    public boolean removeNext(Event into)
+    {
+        if (size == 0)
+        {
+            return false;
+        }
+
+        int s = heap[0];
+        into.set(time[s], type[s], entity[s], packet[s]);
+        removeAt(0);
+        return true;
+    }
+
+    public boolean peekNext(Event into)
+    {
+        if (size == 0)
+        {
+            return false;
+        }
+
+        int s = heap[0];
+        into.set(time[s], type[s], entity[s], packet[s]);
+        return true;
+    }
+
+    public String toString()
+    {
+        // Print in insertion order, like EventListImpl does
+        Integer[] index = new Integer[size];
+        for (int i = 0; i < size; i++)
+        {
+            index[i] = heap[i];
+        }
+        Arrays.sort(index, (a, b) -> Long.compare(order[a], order[b]));
+
+        StringBuilder sb = new StringBuilder("[");
+        for (int i = 0; i < size; i++)
+        {
+            if (i > 0)
+            {
+                sb.append(", ");
+            }
+            sb.append(toEvent(index[i]));
+        }
+        return sb.append("]").toString();
+    }
+
+    public Event removeTimer(int ent)
+    {
+        int s = findTimer(ent);
+        if (s == -1)
+        {
+            return null;
+        }
+
+        Event timer = toEvent(s);
+        removeAt(heapPos[s]);
+        return timer;
+    }
+
+    public boolean cancelTimer(int ent)
+    {
+        int s = findTimer(ent);
+        if (s == -1)
+        {
+            return false;
+        }
+
+        removeAt(heapPos[s]);
+        return true;
+    }
+
+    public boolean rescheduleTimer(int ent, double t)
+    {
+        int s = findTimer(ent);
+        if (s == -1)
+        {
+            return false;
+        }
+
+        // Moving the deadline counts as a fresh add for tie-breaking,
+        // just like a removeTimer followed by add
+        time[s] = t;
+        order[s] = nextOrder++;
+        if (!siftUp(heapPos[s]))
+        {
+            siftDown(heapPos[s]);
+        }
+        return true;
+    }
+
+    // The packet added last, as EventListImpl finds it
+    public double getLastPacketTime(int entityTo)
+    {
+        double last = 0;
+        long latest = -1;
+        for (int i = 0; i < size; i++)
+        {
+            int s = heap[i];
+            if ((type[s] == NetworkSimulator.FROMLAYER3) &&
+                (entity[s] == entityTo) && (order[s] > latest))
+            {
+                latest = order[s];
+                last = time[s];
+            }
+        }
+
+        return last;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    private Event toEvent(int s)
+    {
+        Event e = new Event(0, 0, 0);
+        e.set(time[s], type[s], entity[s], packet[s]);
+        return e;
+    }
+
+    private void grow()
+    {
+        int old = time.length;
+        int n = old * 2;
+        time = Arrays.copyOf(time, n);
+        type = Arrays.copyOf(type, n);
+        entity = Arrays.copyOf(entity, n);
+        packet = Arrays.copyOf(packet, n);
+        order = Arrays.copyOf(order, n);
+        heapPos = Arrays.copyOf(heapPos, n);
+        heap = Arrays.copyOf(heap, n);
+        free = Arrays.copyOf(free, n);
+        for (int i = n - 1; i >= old; i--)
+        {
+            free[freeCount++] = i;
+        }
+    }
+
+    private void removeAt(int i)
+    {
+        int s = heap[i];
+        if (type[s] == NetworkSimulator.TIMERINTERRUPT)
+        {
+            removeTimerSlot(entity[s]);
+        }
+
+        packet[s] = null;
+        free[freeCount++] = s;
+        size--;
+
+        if (i != size)
+        {
+            heap[i] = heap[size];
+            heapPos[heap[i]] = i;
+            if (!siftUp(i))
+            {
+                siftDown(i);
+            }
+        }
+    }
+
+    private boolean less(int i, int j)
+    {
+        int a = heap[i];
+        int b = heap[j];
+        if (time[a] != time[b])
+        {
+            return time[a] < time[b];
+        }
+        if ((entity[a] >> 1) != (entity[b] >> 1))
+        {
+            return (entity[a] >> 1) < (entity[b] >> 1);
+        }
+        return order[a] < order[b];
+    }
+
+    private void swap(int i, int j)
+    {
+        int s = heap[i];
+        heap[i] = heap[j];
+        heap[j] = s;
+        heapPos[heap[i]] = i;
+        heapPos[heap[j]] = j;
+    }
+
+    private void addTimer(int ent, int s)
+    {
+        if (ent < 0)
+        {
+            return;
+        }
+        if (ent >= timerSlot.length)
+        {
+            int n = Math.max(ent + 1, timerSlot.length * 2);
+            int old = timerSlot.length;
+            timerSlot = Arrays.copyOf(timerSlot, n);
+            timerCount = Arrays.copyOf(timerCount, n);
+            Arrays.fill(timerSlot, old, n, -1);
+        }
+
+        timerCount[ent]++;
+        timerSlot[ent] = (timerCount[ent] == 1) ? s : -1;
+    }
+
+    private void removeTimerSlot(int ent)
+    {
+        if ((ent < 0) || (ent >= timerSlot.length))
+        {
+            return;
+        }
+
+        // If one timer is left its slot is found again on the next lookup
+        timerCount[ent]--;
+        timerSlot[ent] = -1;
+    }
+
+    private int findTimer(int ent)
+    {
+        if ((ent >= 0) && (ent < timerSlot.length))
+        {
+            if (timerCount[ent] == 0)
+            {
+                return -1;
+            }
+            if (timerSlot[ent] != -1)
+            {
+                return timerSlot[ent];
+            }
+        }
+        else if (ent >= 0)
+        {
+            return -1;
+        }
+
+        // Take the earliest-added timer for this entity, as EventListImpl does
+        int found = -1;
+        for (int i = 0; i < size; i++)
+        {
+            int s = heap[i];
+            if ((type[s] == NetworkSimulator.TIMERINTERRUPT) &&
+                (entity[s] == ent) &&
+                ((found == -1) || (order[s] < order[found])))
+            {
+                found = s;
+            }
+        }
+        if ((found != -1) && (ent >= 0) && (timerCount[ent] == 1))
+        {
+            timerSlot[ent] = found;
+        }
+        return found;
+    }
+
+    // Returns true if the element moved
+    private boolean siftUp(int i)
+    {
+        int start = i;
+        while (i > 0)
+        {
+            int parent = (i - 1) / 2;
+            if (!less(i, parent))
+            {
+                break;
+            }
+            swap(i, parent);
+            i = parent;
+        }
+        return i != start;
+    }
+
+    private void siftDown(int i)
+    {
+        while (true)
+        {
+            int left = 2 * i + 1;
+            if (left >= size)
+            {
+                break;
+            }
+
+            int smallest = left;
+            int right = left + 1;
+            if ((right < size) && less(right, left))
+            {
+                smallest = right;
+            }
+
+            if (!less(smallest, i))
+            {
+                break;
+            }
+            swap(i, smallest);
+            i = smallest;
+        }
+    }
+}
@@ -0,0 +1,30 @@
+// Loss and corruption as independent trials for every packet, drawn on
+// random streams 1 and 3
+public class IidImpairment implements Impairment
+{
+    public static final String NAME = "iid";
+
+    private double lossProb;
+    private double corruptProb;
+
+    public IidImpairment(double loss, double corrupt)
+    {
+        lossProb = loss;
+        corruptProb = corrupt;
+    }
+
+    public boolean isLost(double time, OSIRandom rand)
+    {
+        return rand.nextDouble(1) < lossProb;
+    }
+
+    public boolean isCorrupted(double time, OSIRandom rand)
+    {
+        return rand.nextDouble(3) < corruptProb;
+    }
+
+    public String getName()
+    {
+        return NAME;
+    }
+}
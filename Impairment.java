@@ -0,0 +1,43 @@
+// Decides which packets a channel loses or corrupts.  Chosen per run with
+// -Dimpairment=<name>; "iid", the default, is the original channel,
+// where every packet is lost or corrupted independently with the
+// simulator's loss and corruption probabilities.  "gilbert" loses and
+// corrupts them in bursts (Gilbert-Elliott) and "trace" replays a loss
+// pattern from a file.
+//
+// Each receiver's channel has one of its own, asked about every packet
+// sent to it in turn, even when the channel is shared: the damage is
+// done on each flow's own way to the shared link.
+public interface Impairment
+{
+    public static final String PROPERTY = "impairment";
+
+    // Whether the packet sent at "time" is lost.  Any random numbers come
+    // from "rand", the sending flow's generator.
+    public boolean isLost(double time, OSIRandom rand);
+
+    // Whether a packet that was not lost is corrupted
+    public boolean isCorrupted(double time, OSIRandom rand);
+
+    public String getName();
+
+    // "loss" and "corrupt" are the simulator's probabilities
+    public static Impairment forName(String name, double loss, double corrupt)
+    {
+        if (name.equals(GilbertElliottImpairment.NAME))
+        {
+            return new GilbertElliottImpairment(loss, corrupt);
+        }
+        else if (name.equals(TraceLossImpairment.NAME))
+        {
+            return new TraceLossImpairment(corrupt);
+        }
+        else if (!name.equals(IidImpairment.NAME))
+        {
+            System.out.println("Warning: unknown impairment \"" + name +
+                               "\", using " + IidImpairment.NAME);
+        }
+
+        return new IidImpairment(loss, corrupt);
+    }
+}
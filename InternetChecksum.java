@@ -0,0 +1,35 @@
+// The 16-bit ones' complement checksum used by IP, TCP and UDP (RFC 1071),
+// taken over the seq and ack fields as 32-bit big-endian words followed by
+// the payload, padded with a zero byte if its length is odd
+public class InternetChecksum implements ChecksumEngine
+{
+    public static final String NAME = "internet";
+
+    public int compute(int seqnum, int acknum, byte[] payload)
+    {
+        long sum = (seqnum >>> 16) + (seqnum & 0xFFFF) +
+                   (acknum >>> 16) + (acknum & 0xFFFF);
+
+        int n = payload.length;
+        int i = 0;
+        for (; i + 1 < n; i += 2)
+        {
+            sum += ((payload[i] & 0xFF) << 8) | (payload[i + 1] & 0xFF);
+        }
+        if (i < n)
+        {
+            sum += (payload[i] & 0xFF) << 8;
+        }
+
+        while ((sum >>> 16) != 0)
+        {
+            sum = (sum & 0xFFFF) + (sum >>> 16);
+        }
+        return (int)(~sum & 0xFFFF);
+    }
+
+    public String getName()
+    {
+        return NAME;
+    }
+}
@@ -0,0 +1,152 @@
+import java.util.Arrays;
+
+// A log-linear histogram of non-negative times in the style of
+// HdrHistogram.  Values are recorded in thousandths of a time unit; up to
+// 2^SUB_BITS thousandths every value has its own bucket, and above that
+// each power of two is split into 2^(SUB_BITS-1) buckets, so a reported
+// percentile is within about 0.8% of the true value.  Recording is a few
+// shifts and one array increment; the bucket array only grows, up to
+// about 60KB, when a larger value than before comes along.
+public class LatencyHistogram
+{
+    private static final int SUB_BITS = 8;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int HALF_COUNT = SUB_COUNT / 2;
+    private static final double SCALE = 1000.0;
+    private static final int BUCKETS = SUB_COUNT + (64 - SUB_BITS) * HALF_COUNT;
+
+    private long[] counts;
+    private long total;
+    private double sum;
+    private double min;
+    private double max;
+
+    public LatencyHistogram()
+    {
+        counts = new long[SUB_COUNT];
+        total = 0;
+        sum = 0;
+        min = Double.POSITIVE_INFINITY;
+        max = Double.NEGATIVE_INFINITY;
+    }
+
+    public void record(double value)
+    {
+        long v = Math.max(0, Math.round(value * SCALE));
+        int i = index(v);
+        if (i >= counts.length)
+        {
+            grow(i);
+        }
+        counts[i]++;
+        total++;
+        sum += value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    // Adds everything recorded in "other" to this histogram
+    public void add(LatencyHistogram other)
+    {
+        if (other.counts.length > counts.length)
+        {
+            grow(other.counts.length - 1);
+        }
+        for (int i = 0; i < other.counts.length; i++)
+        {
+            counts[i] += other.counts[i];
+        }
+        total += other.total;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    public long getCount()
+    {
+        return total;
+    }
+
+    public double getMean()
+    {
+        return sum / total;
+    }
+
+    public double getMin()
+    {
+        return min;
+    }
+
+    public double getMax()
+    {
+        return max;
+    }
+
+    // The value at percentile "p" (0 to 100), or NaN if nothing was
+    // recorded
+    public double getPercentile(double p)
+    {
+        if (total == 0)
+        {
+            return Double.NaN;
+        }
+
+        long rank = Math.max(1, (long)Math.ceil(p / 100.0 * total));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++)
+        {
+            seen += counts[i];
+            if (seen >= rank)
+            {
+                // Report the middle of the bucket, clamped to what was
+                // actually seen
+                double v = (lowest(i) + highest(i)) / 2.0 / SCALE;
+                return Math.min(Math.max(v, min), max);
+            }
+        }
+        return max;
+    }
+
+    private void grow(int i)
+    {
+        counts = Arrays.copyOf(counts,
+                               Math.min(BUCKETS, Math.max(i + 1,
+                                                          counts.length * 2)));
+    }
+
+    private static int index(long v)
+    {
+        if (v < SUB_COUNT)
+        {
+            return (int)v;
+        }
+
+        int msb = 63 - Long.numberOfLeadingZeros(v);
+        int shift = msb - (SUB_BITS - 1);
+        int top = (int)(v >>> shift);
+        return SUB_COUNT + (shift - 1) * HALF_COUNT + (top - HALF_COUNT);
+    }
+
+    private static long lowest(int i)
+    {
+        if (i < SUB_COUNT)
+        {
+            return i;
+        }
+
+        int shift = (i - SUB_COUNT) / HALF_COUNT + 1;
+        long top = (i - SUB_COUNT) % HALF_COUNT + HALF_COUNT;
+        return top << shift;
+    }
+
+    private static long highest(int i)
+    {
+        if (i < SUB_COUNT)
+        {
+            return i;
+        }
+
+        int shift = (i - SUB_COUNT) / HALF_COUNT + 1;
+        return lowest(i) + (1L << shift) - 1;
+    }
+}
@@ -0,0 +1,49 @@
+// One way of a channel: takes the packets sent to a receiver and says
+// when each gets there, or that it never does.  Chosen per run with
+// -Dlink=<name>; "random", the default, is the original channel, where
+// a packet arrives 1 to 10 time units after the one ahead of it.
+// "droptail" and "red" put a queue and a link of finite bandwidth in
+// front of the receiver, so how much is in flight shows up as queueing
+// delay and, once the queue fills, as drops.
+//
+// Sends come in time order.  Each receiver has a link of its own, or
+// with a shared channel every flow sends through the same link each way.
+public interface Link
+{
+    public static final String PROPERTY = "link";
+
+    // When "packet", put on the link at "time", gets to the other end, or
+    // a negative number if the link drops it.  Any random numbers come
+    // from "rand", the sending flow's generator.
+    public double send(double time, Packet packet, OSIRandom rand);
+
+    // The least time any packet spends on the link
+    public double getLookahead();
+
+    // The earliest a packet put on the link at or after "time" can get
+    // to the other end, given what has been sent so far: at least
+    // getLookahead() after "time", and later while packets already sent
+    // hold the link up
+    public double getEarliestArrival(double time);
+
+    public String getName();
+
+    public static Link forName(String name)
+    {
+        if (name.equals(QueueLink.NAME))
+        {
+            return new QueueLink();
+        }
+        else if (name.equals(RedLink.NAME))
+        {
+            return new RedLink();
+        }
+        else if (!name.equals(RandomDelayLink.NAME))
+        {
+            System.out.println("Warning: unknown link \"" + name +
+                               "\", using " + RandomDelayLink.NAME);
+        }
+
+        return new RandomDelayLink();
+    }
+}
@@ -0,0 +1,328 @@
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+
+// A block of a run's flows sharing one event list and clock, and the loop
+// that dispatches their events in order.  A run on one thread is a single
+// LogicalProcess holding every flow; ParallelEngine gives each of its
+// threads one.
+//
+// Events come out by time, then flow, then the order they were added in.
+// That order does not depend on how the flows are split up, which is what
+// lets a parallel run dispatch exactly the events a sequential one does.
+public class LogicalProcess
+{
+    // Kinds of held output
+    public static final int TEXT = 0;
+    public static final int DELIVERY = 1;
+    public static final int SEND = 2;
+
+    // Something an event did that must wait for the end of a window to
+    // take effect: console text, a delivery, or a packet sent on a shared
+    // channel, whose arrival time depends on what every other flow sent
+    // ahead of it.  "time" and "flow" are those of the event.
+    public static class Held
+    {
+        private double time;
+        private int flow;
+        private int kind;
+
+        // TEXT and DELIVERY
+        private byte[] data;
+
+        // SEND: the destination entity, the packet, and its reserved
+        // place among the destination's events
+        private int entity;
+        private Packet packet;
+        private long order;
+
+        private Held(double time, int flow, int kind)
+        {
+            this.time = time;
+            this.flow = flow;
+            this.kind = kind;
+        }
+
+        public double getTime()
+        {
+            return time;
+        }
+
+        public int getFlow()
+        {
+            return flow;
+        }
+
+        public int getKind()
+        {
+            return kind;
+        }
+
+        public byte[] getData()
+        {
+            return data;
+        }
+
+        public int getEntity()
+        {
+            return entity;
+        }
+
+        public Packet getPacket()
+        {
+            return packet;
+        }
+
+        public long getOrder()
+        {
+            return order;
+        }
+    }
+
+    private EventList eventList;
+    private double time;
+    private long nEvents;
+
+    // Every flow in the run, by index; flows from..to-1 are this one's
+    private ArrayList<NetworkSimulator> flows;
+    private int from;
+    private int to;
+
+    private SimulatorLog log;
+    private int traceLevel;
+    private TraceRecorder recorder;
+    private SimulatorMetrics metrics;
+
+    // While output is held: what the events so far have held back, the
+    // console text of the event being dispatched, and its flow
+    private ArrayList<Held> held;
+    private ByteArrayOutputStream text;
+    private int currentFlow;
+
+    // Filled in by the event list on every iteration, so the main loop
+    // does not allocate an Event per event
+    private Event next = new Event(0, 0, 0);
+
+    public LogicalProcess(EventList eventList)
+    {
+        this.eventList = eventList;
+        time = 0;
+        nEvents = 0;
+    }
+
+    public EventList getEventList()
+    {
+        return eventList;
+    }
+
+    public double getTime()
+    {
+        return time;
+    }
+
+    // Events dispatched so far
+    public long getEventCount()
+    {
+        return nEvents;
+    }
+
+    // Puts flows from..to-1 of "all" in this process.  Events for other
+    // flows are never added here.
+    void setFlows(ArrayList<NetworkSimulator> all, int from, int to)
+    {
+        flows = all;
+        this.from = from;
+        this.to = to;
+    }
+
+    // Trace and event output for the run.  The recorder and metrics may
+    // be null; the metrics are ticked every SimulatorMetrics.TICK_EVENTS
+    // events.
+    void setOutput(SimulatorLog log, int traceLevel, TraceRecorder recorder,
+                   SimulatorMetrics metrics)
+    {
+        this.log = log;
+        this.traceLevel = traceLevel;
+        this.recorder = recorder;
+        this.metrics = metrics;
+    }
+
+    // From now on console text, deliveries and shared-channel sends are
+    // held until takeHeld().  Returns the log the flows here should write
+    // to; the event list must be a HeapEventList.
+    SimulatorLog holdOutput(int level)
+    {
+        if (!(eventList instanceof HeapEventList))
+        {
+            throw new IllegalStateException("held sends need a HeapEventList");
+        }
+
+        traceLevel = level;
+        held = new ArrayList<Held>();
+        text = new ByteArrayOutputStream();
+        log = new SimulatorLog(new PrintStream(text, true), level, false);
+        return log;
+    }
+
+    boolean isHolding()
+    {
+        return held != null;
+    }
+
+    // Sink that holds deliveries for takeHeld()
+    DeliverySink heldSink()
+    {
+        return new DeliverySink()
+        {
+            public void deliver(byte[] data, int length)
+            {
+                Held h = new Held(time, currentFlow, DELIVERY);
+                h.data = new byte[length];
+                System.arraycopy(data, 0, h.data, 0, length);
+                held.add(h);
+            }
+
+            public void close()
+            {
+            }
+        };
+    }
+
+    // Holds a packet sent to "entity" on a shared channel.  The event's
+    // text so far is held ahead of it, so anything traced when it is
+    // sent comes out where it would on one thread.
+    void holdSend(int entity, Packet packet)
+    {
+        holdText(time, currentFlow);
+        Held h = new Held(time, currentFlow, SEND);
+        h.entity = entity;
+        h.packet = packet;
+        h.order = ((HeapEventList)eventList).reserveOrder();
+        held.add(h);
+    }
+
+    // Adds the arrival of a held send, once its time is known
+    void addHeldSend(Held h, double arrivalTime)
+    {
+        ((HeapEventList)eventList).add(arrivalTime, NetworkSimulator.FROMLAYER3,
+                                        h.entity, h.packet, h.order);
+    }
+
+    // What has been held since the last call, in event order
+    ArrayList<Held> takeHeld()
+    {
+        ArrayList<Held> taken = held;
+        held = new ArrayList<Held>();
+        return taken;
+    }
+
+    // Starts each flow here off, in flow order.  Anything held is put
+    // before every event.
+    void init()
+    {
+        for (int i = from; i < to; i++)
+        {
+            currentFlow = i;
+            flows.get(i).init();
+            holdText(Double.NEGATIVE_INFINITY, i);
+        }
+    }
+
+    // Dispatches events in order until flow "lastFlow" is finished or the
+    // event list runs dry, returning false then, or until the metrics
+    // ask for a stop, returning false as well.  With "end" finite it
+    // also stops, returning true, before an event at or after "end" or
+    // after (lastTime, lastFlow) in event order.
+    boolean run(double end, double lastTime, int lastFlow)
+    {
+        boolean bounded = end != Double.POSITIVE_INFINITY;
+        while (true)
+        {
+            if (bounded)
+            {
+                if (!eventList.peekNext(next))
+                {
+                    return false;
+                }
+                double t = next.getTime();
+                if ((t >= end) || (t > lastTime) ||
+                    ((t == lastTime) && ((next.getEntity() >> 1) > lastFlow)))
+                {
+                    return true;
+                }
+            }
+
+            // Get our next event
+            if (!eventList.removeNext(next))
+            {
+                return false;
+            }
+            nEvents++;
+
+            // Rates, snapshots and stop requests are handled in batches
+            if ((metrics != null) &&
+                ((nEvents % SimulatorMetrics.TICK_EVENTS) == 0) &&
+                metrics.tick())
+            {
+                log.log(SimulatorLog.ALWAYS, "Simulation stopped at time " +
+                        next.getTime() + " on request");
+                return false;
+            }
+
+            if (traceLevel >= 2)
+            {
+                log.log(SimulatorLog.DETAIL, "\nEVENT time: " + next.getTime() +
+                        "  type: " + next.getType() +
+                        "  entity: " + next.getEntity());
+            }
+
+            if (recorder != null)
+            {
+                try{
+                    recorder.recordEvent(next.getTime(), next.getType(),
+                                         next.getEntity(), next.getPacket());
+                }catch (IOException e) {throw new UncheckedIOException(e);}
+            }
+
+            // Advance the simulator's time
+            time = next.getTime();
+
+            // Hand the event to its flow, as A or B
+            int entity = next.getEntity();
+            int flow = entity >> 1;
+            if ((flow < from) || (flow >= to))
+            {
+                log.log(SimulatorLog.ALWAYS, "INTERNAL PANIC: " +
+                        "Event for unknown entity");
+                continue;
+            }
+            currentFlow = flow;
+            flows.get(flow).dispatch(next, entity & 1);
+            holdText(time, flow);
+
+            if ((flow == lastFlow) && flows.get(flow).isFinished())
+            {
+                return false;
+            }
+        }
+    }
+
+    // Sets the clock, for the end of a parallel run
+    void setTime(double t)
+    {
+        time = t;
+    }
+
+    private void holdText(double t, int flow)
+    {
+        if ((text != null) && (text.size() > 0))
+        {
+            Held h = new Held(t, flow, TEXT);
+            h.data = text.toByteArray();
+            text.reset();
+            held.add(h);
+        }
+    }
+}
@@ -0,0 +1,54 @@
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+// Writes to a memory-mapped file.  The file is mapped in large chunks
+// ahead of the data, so a delivery is just a copy into memory, and it is
+// cut back to the bytes actually written when the sink is closed.
+public class MappedDeliverySink implements DeliverySink
+{
+    public static final String NAME = "mapped";
+
+    private static final long CHUNK_SIZE = 64L << 20;
+
+    private FileChannel channel;
+    private MappedByteBuffer map;
+    private long mapStart;
+    private long written;
+
+    public MappedDeliverySink(String path) throws IOException
+    {
+        channel = FileChannel.open(Paths.get(path),
+                                   StandardOpenOption.CREATE,
+                                   StandardOpenOption.READ,
+                                   StandardOpenOption.WRITE,
+                                   StandardOpenOption.TRUNCATE_EXISTING);
+        mapStart = 0;
+        written = 0;
+        map = channel.map(FileChannel.MapMode.READ_WRITE, 0, CHUNK_SIZE);
+    }
+
+    public void deliver(byte[] data, int length) throws IOException
+    {
+        if (map.remaining() < length + 1)
+        {
+            // Map the next chunk, starting at the first unwritten byte
+            mapStart = written;
+            map = channel.map(FileChannel.MapMode.READ_WRITE, mapStart,
+                              CHUNK_SIZE);
+        }
+        map.put(data, 0, length);
+        map.put((byte)'\n');
+        written += length + 1;
+    }
+
+    public void close() throws IOException
+    {
+        map.force();
+        map = null;
+        channel.truncate(written);
+        channel.close();
+    }
+}
@@ -0,0 +1,32 @@
+import java.util.ArrayList;
+import java.util.List;
+
+// Keeps every delivered message in memory, for checking what a run
+// delivered without going through a file
+public class MemoryDeliverySink implements DeliverySink
+{
+    public static final String NAME = "memory";
+
+    private List<byte[]> messages;
+
+    public MemoryDeliverySink()
+    {
+        messages = new ArrayList<byte[]>();
+    }
+
+    public void deliver(byte[] data, int length)
+    {
+        byte[] copy = new byte[length];
+        System.arraycopy(data, 0, copy, 0, length);
+        messages.add(copy);
+    }
+
+    public void close()
+    {
+    }
+
+    public List<byte[]> getMessages()
+    {
+        return messages;
+    }
+}
@@ -1,6 +1,12 @@
+import java.nio.charset.StandardCharsets;
+
 public class Message
 {
+    // The data is kept as a String, as bytes, or both; whichever form is
+    // missing is filled in from the other the first time it is asked for.
+    // Bytes and chars map one to one (ISO-8859-1).
     private String data;
+    private byte[] bytes;
     
     public Message(String inputData)
     {
@@ -14,12 +20,30 @@ public class Message
         }
         else
         {
-            data = new String(inputData);
+            data = inputData;
+        }
+    }
+    
+    // The array is used as is, not copied, and must not be changed later
+    public Message(byte[] inputData)
+    {
+        if (inputData == null)
+        {
+            data = "";
+        }
+        else if (inputData.length > NetworkSimulator.MAXDATASIZE)
+        {
+            data = "";
+        }
+        else
+        {
+            bytes = inputData;
         }
     }
            
     public boolean setData(String inputData)
     {
+        bytes = null;
         if (inputData == null)
         {
             data = "";
@@ -32,13 +56,49 @@ public class Message
         }
         else
         {
-            data = new String(inputData);
+            data = inputData;
+            return true;
+        }
+    }
+    
+    public boolean setData(byte[] inputData)
+    {
+        if (inputData == null)
+        {
+            data = "";
+            bytes = null;
+            return false;
+        }
+        else if (inputData.length > NetworkSimulator.MAXDATASIZE)
+        {
+            data = "";
+            bytes = null;
+            return false;
+        }
+        else
+        {
+            data = null;
+            bytes = inputData;
             return true;
         }
     }
     
     public String getData()
     {
+        if (data == null)
+        {
+            data = new String(bytes, StandardCharsets.ISO_8859_1);
+        }
         return data;
     }
+    
+    // The returned array must not be changed
+    public byte[] getDataBytes()
+    {
+        if (bytes == null)
+        {
+            bytes = data.getBytes(StandardCharsets.ISO_8859_1);
+        }
+        return bytes;
+    }
 }
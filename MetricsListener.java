@@ -0,0 +1,7 @@
+// Receives periodic snapshots of a running simulation.  Called on the
+// simulator's own thread between events, so every value read from
+// "metrics" during the call is consistent.
+public interface MetricsListener
+{
+    public void onSnapshot(SimulatorMetrics metrics);
+}
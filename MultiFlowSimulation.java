@@ -0,0 +1,141 @@
+import java.io.*;
+
+// Runs N independent sender/receiver flows in one simulator and reports
+// how the run scales as N grows.  Every flow is a StudentNetworkSimulator
+// with the same settings and flow i has seed S+i; they share the event
+// loop and clock, and with --shared also one channel each way, so their
+// packets queue behind each other as on a bottleneck link; run with
+// -Dlink=droptail or -Dlink=red to give that link a finite bandwidth and
+// buffer (see Link).  --threads runs the flows on that many threads with
+// ParallelEngine.
+//
+// For each flow count the table shows the events dispatched, the wall
+// time and event rate, the messages delivered over all flows, the mean
+// goodput per flow and Jain's fairness index of the flows' goodputs
+// (1 when every flow gets the same, 1/N when one flow gets everything).
+//
+// Usage: java MultiFlowSimulation [--flows N1,N2,...] [--nsim N]
+//            [--delay D] [--loss L] [--corrupt C] [--window W]
+//            [--timeout T] [--seed S] [--shared true|false]
+//            [--threads N]
+public class MultiFlowSimulation
+{
+    private int nsim = 100;
+    private double delay = 10;
+    private double loss = 0.0;
+    private double corrupt = 0.0;
+    private int window = 8;
+    private double timeout = 30;
+    private int seed = 1;
+    private boolean shared = false;
+    private int threads = 1;
+
+    // Runs "flows" flows to the end and returns the host simulator
+    public NetworkSimulator run(int flows)
+    {
+        PrintStream quiet = new PrintStream(OutputStream.nullOutputStream());
+        StudentNetworkSimulator host = createFlow(quiet, seed);
+        host.setDeliverySink(new NullDeliverySink());
+        host.setSharedChannel(shared);
+        host.setThreads(threads);
+        for (int i = 1; i < flows; i++)
+        {
+            host.addFlow(createFlow(quiet, seed + i));
+        }
+        host.runSimulator();
+        return host;
+    }
+
+    private StudentNetworkSimulator createFlow(PrintStream console, int s)
+    {
+        StudentNetworkSimulator f =
+            new StudentNetworkSimulator(nsim, loss, corrupt, delay, 0, s,
+                                        window, timeout);
+        f.setConsole(console);
+        return f;
+    }
+
+    // Jain's index: (sum x)^2 / (n * sum x^2)
+    public static double fairness(double[] x)
+    {
+        double sum = 0;
+        double squares = 0;
+        for (double v : x)
+        {
+            sum += v;
+            squares += v * v;
+        }
+        return (squares == 0) ? 1.0 : sum * sum / (x.length * squares);
+    }
+
+    public static void main(String[] argv)
+    {
+        MultiFlowSimulation m = new MultiFlowSimulation();
+        int[] flowCounts = {1, 10, 100, 1000, 10000};
+
+        for (int i = 0; i + 1 < argv.length; i += 2)
+        {
+            String value = argv[i + 1];
+            switch (argv[i])
+            {
+                case "--flows":   flowCounts = parseInts(value); break;
+                case "--nsim":    m.nsim = Integer.parseInt(value); break;
+                case "--delay":   m.delay = Double.parseDouble(value); break;
+                case "--loss":    m.loss = Double.parseDouble(value); break;
+                case "--corrupt": m.corrupt = Double.parseDouble(value); break;
+                case "--window":  m.window = Integer.parseInt(value); break;
+                case "--timeout": m.timeout = Double.parseDouble(value); break;
+                case "--seed":    m.seed = Integer.parseInt(value); break;
+                case "--shared":  m.shared = Boolean.parseBoolean(value); break;
+                case "--threads": m.threads = Integer.parseInt(value); break;
+                default:
+                    System.out.println("Unknown option " + argv[i]);
+                    System.exit(1);
+            }
+        }
+
+        // One small untimed run first to warm up the JIT
+        m.run(flowCounts[0]);
+
+        System.out.printf("%7s %10s %10s %12s %10s %9s %9s %9s %8s%n",
+                          "flows", "events", "wall ms", "events/s",
+                          "deliver", "goodput", "avgRTT", "p99RTT",
+                          "fairness");
+        for (int n : flowCounts)
+        {
+            long start = System.nanoTime();
+            NetworkSimulator host = m.run(n);
+            long elapsed = System.nanoTime() - start;
+
+            double end = host.getMetrics().getSimulatedTime();
+            double[] goodput = new double[n];
+            SimulationStatistics total = null;
+            for (int i = 0; i < n; i++)
+            {
+                SimulationStatistics s = host.getFlow(i).getStatistics();
+                goodput[i] = s.getDelivered() / end;
+                total = (total == null) ? s : total.add(s);
+            }
+
+            System.out.printf("%7d %10d %10.1f %12.0f %10d %9.4f %9.3f %9.3f %8.4f%n",
+                              n, host.getEventCount(), elapsed / 1e6,
+                              host.getEventCount() * 1e9 / elapsed,
+                              total.getDelivered(),
+                              total.getDelivered() / end / n,
+                              total.getAverageRTT(),
+                              total.getRTTHistogram().getPercentile(99),
+                              fairness(goodput));
+        }
+    }
+
+    private static int[] parseInts(String s)
+    {
+        String[] parts = s.split(",");
+        int[] values = new int[parts.length];
+        for (int i = 0; i < parts.length; i++)
+        {
+            values[i] = Integer.parseInt(parts[i].trim());
+        }
+        return values;
+    }
+}
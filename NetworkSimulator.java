@@ -1,3 +1,4 @@
+import java.util.ArrayList;
 import java.util.Vector;
 import java.util.Enumeration;
 import java.io.*;
@@ -12,18 +13,56 @@ public abstract class NetworkSimulator
     public static final int TIMERINTERRUPT = 0;
     public static final int FROMLAYER5 = 1;
     public static final int FROMLAYER3 = 2;
+    // Wakes up the per-id timers; 3 is taken by TraceRecorder.SEND
+    public static final int TIMERWHEEL = 4;
     
     // These constants represent our sender and receiver 
     public static final int A = 0;
     public static final int B = 1;
 
+    // The event list implementation is chosen with -Deventlist=<name>.
+    // "heap" is the default; "vector" is the original linear list and
+    // is kept around to check results against.
+    public static final String EVENTLIST_PROPERTY = "eventlist";
+    public static final String EVENTLIST_HEAP = "heap";
+    public static final String EVENTLIST_VECTOR = "vector";
+
+    // The original channel takes at least this long to deliver a packet,
+    // and ParallelEngine's first window is this long; see
+    // Link.getLookahead
+    public static final double LOOKAHEAD = 1.0;
+
+    // Per-id timers go off on a multiple of this many time units, set
+    // with -Dtimer.tick=<units>
+    public static final String TIMER_TICK_PROPERTY = "timer.tick";
+    public static final double DEFAULT_TIMER_TICK = 0.001;
+
     private int maxMessages;
-    private double lossProb;
-    private double corruptProb;
     private double avgMessageDelay;
     protected int traceLevel;
     private EventList eventList;
-    private FileWriter outFile;
+    private DeliverySink outFile;
+
+    // Reused by toLayer5(String) to hand the sink bytes
+    private byte[] deliveryBuffer = new byte[MAXDATASIZE];
+
+    // Where trace and statistics text goes; System.out unless changed
+    // with setConsole
+    protected PrintStream out;
+
+    // Trace output during a run, written to "out"; see SimulatorLog
+    protected SimulatorLog log;
+
+    // Binary trace of the run, or null; see TraceRecorder
+    private TraceRecorder recorder;
+
+    // Live counters for JMX and snapshot listeners; see SimulatorMetrics
+    private SimulatorMetrics metrics;
+
+    // A's per-id timers, and the time of the earliest TIMERWHEEL event
+    // in the event list
+    private TimingWheel timers;
+    private double timersWakeup;
 
     private OSIRandom rand;
 
@@ -31,7 +70,30 @@ public abstract class NetworkSimulator
     private int nToLayer3;
     private int nLost;
     private int nCorrupt;
-    private double time;
+    private int nDropped;
+
+    // The simulator whose run this one is part of, and this one's place
+    // in it; see addFlow.  A simulator on its own is its own host and
+    // flow 0.  The log, trace recorder and metrics that count are the
+    // host's.
+    private NetworkSimulator host;
+    private int flow;
+    private ArrayList<NetworkSimulator> flows;
+
+    // The process whose event list and clock this flow uses, and on the
+    // host, every process of the run and how many threads to run it on
+    private LogicalProcess lp;
+    private ArrayList<LogicalProcess> processes;
+    private int threads;
+
+    // The links to this flow's A and B; with a shared channel, the
+    // host's are the ones every flow sends through
+    private boolean sharedChannel;
+    private Link[] links;
+
+    // What loses or corrupts packets on the way to this flow's A and B
+    private Impairment[] impairments;
+
     
     
     protected abstract void aOutput(Message message);
@@ -39,6 +101,12 @@ public abstract class NetworkSimulator
     protected abstract void aTimerInterrupt();
     protected abstract void aInit();
 
+    // Called when A's timer for "id" goes off; see startTimer(int, int,
+    // double).  Does nothing unless overridden.
+    protected void aTimerInterrupt(int id)
+    {
+    }
+
     protected abstract void bInput(Packet packet);
     protected abstract void bInit();
     protected abstract void Simulation_done();
@@ -51,126 +119,462 @@ public abstract class NetworkSimulator
                             int seed)
     {
         maxMessages = numMessages;
-        lossProb = loss;
-        corruptProb = corrupt;
         avgMessageDelay = avgDelay;
         traceLevel = trace;
-        eventList = new EventListImpl();
+        eventList = createEventList(System.getProperty(EVENTLIST_PROPERTY,
+                                                       EVENTLIST_HEAP));
         rand = new OSIRandom(seed);
-        try{
-            outFile = new FileWriter("OutputFile");
-        }catch (Exception e) {e.printStackTrace();}
+        out = System.out;
+        // Made on first use, since most flows in a big run never need one
+        timers = null;
+        timersWakeup = Double.POSITIVE_INFINITY;
+        host = this;
+        flow = 0;
+        flows = new ArrayList<NetworkSimulator>();
+        flows.add(this);
+        // The second of each pair is made by the first's name, so an
+        // unknown name is only warned about once
+        Link link = Link.forName(System.getProperty(Link.PROPERTY,
+                                                    RandomDelayLink.NAME));
+        links = new Link[] {link, Link.forName(link.getName())};
+        Impairment impairment =
+            Impairment.forName(System.getProperty(Impairment.PROPERTY,
+                                                  IidImpairment.NAME),
+                               loss, corrupt);
+        impairments = new Impairment[] {
+            impairment, Impairment.forName(impairment.getName(), loss, corrupt)};
+        lp = new LogicalProcess(eventList);
+        processes = new ArrayList<LogicalProcess>();
+        processes.add(lp);
+        threads = Integer.getInteger(ParallelEngine.THREADS_PROPERTY, 1);
 
         nSim = 0;
         nToLayer3 = 0;
         nLost = 0;
         nCorrupt = 0;
-        time = 0;
+        nDropped = 0;
+        metrics = new SimulatorMetrics(this);
+    }
+    
+    // Sends delivered data to "sink" instead of the file OutputFile.
+    // Must be called before runSimulator(); the sink is closed at the end
+    // of the run.
+    public void setDeliverySink(DeliverySink sink)
+    {
+        outFile = sink;
+    }
+    
+    // Records a binary trace of the run to "r", which is closed at the end
+    // of the run.  Without this, -Dtracefile=<path> records to that file.
+    public void setTraceRecorder(TraceRecorder r)
+    {
+        recorder = r;
+    }
+    
+    // Sends trace and statistics text to "console" instead of System.out
+    public void setConsole(PrintStream console)
+    {
+        out = console;
+    }
+    
+    // Calls "listener" with a snapshot of the run about every
+    // "intervalMillis" of wall time.  Without this, -Dmetrics.interval=<ms>
+    // prints a snapshot line at that interval.
+    public void setMetricsListener(MetricsListener listener,
+                                   long intervalMillis)
+    {
+        metrics.setListener(listener, intervalMillis);
     }
     
+    public SimulatorMetrics getMetrics()
+    {
+        return metrics;
+    }
+    
+    // Ends the run within SimulatorMetrics.TICK_EVENTS events, or at the
+    // end of the current window in a parallel run.  Safe to call from any
+    // thread.
+    public void requestStop()
+    {
+        metrics.stop();
+    }
+    
+    // Runs "f" as one more sender/receiver pair in this simulator's event
+    // loop.  The n-th flow added has entities 2n (its A) and 2n+1 (its B),
+    // so this simulator, flow 0, keeps A and B.  Each flow keeps its own
+    // protocol state, random numbers, message count, loss, corruption and
+    // message rate, trace level, console and statistics; the clock and
+    // event list are this simulator's.  Since flows draw from their own
+    // generators, give them different seeds unless they are meant to
+    // behave the same.  Must be called before runSimulator(), which runs
+    // every flow.
+    public void addFlow(NetworkSimulator f)
+    {
+        if ((f.host != f) || (f.flows.size() > 1) || (f == this))
+        {
+            throw new IllegalArgumentException("already part of a run");
+        }
+
+        f.host = this;
+        f.flow = flows.size();
+        f.flows = null;
+        f.eventList = eventList;
+        f.lp = lp;
+        f.processes = null;
+        flows.add(f);
+    }
+    
+    // Runs the flows on "n" threads with ParallelEngine, which gives the
+    // same results as one thread.  Without this, -Dengine.threads=<n>
+    // sets the number; the default is 1.  Must be called before
+    // runSimulator().
+    public void setThreads(int n)
+    {
+        threads = n;
+    }
+    
+    // With "shared" true, all flows send through one channel each way,
+    // so each flow's packets queue behind every other flow's as on a
+    // bottleneck link; otherwise every receiver has a channel of its own.
+    // Must be called before runSimulator().
+    public void setSharedChannel(boolean shared)
+    {
+        sharedChannel = shared;
+    }
+    
+    public boolean isSharedChannel()
+    {
+        return sharedChannel;
+    }
+    
+    // The least time the shared channel takes to deliver a packet
+    double getLookahead()
+    {
+        return Math.min(links[A].getLookahead(), links[B].getLookahead());
+    }
+    
+    // The earliest a packet sent on the shared channel at or after "time"
+    // can arrive, either way
+    double getEarliestArrival(double time)
+    {
+        return Math.min(links[A].getEarliestArrival(time),
+                        links[B].getEarliestArrival(time));
+    }
+    
+    public int getFlowCount()
+    {
+        return host.flows.size();
+    }
+    
+    public NetworkSimulator getFlow(int i)
+    {
+        return host.flows.get(i);
+    }
+    
+    // This simulator's index among the flows of its run
+    public int getFlowId()
+    {
+        return flow;
+    }
+    
+    protected static EventList createEventList(String name)
+    {
+        if (name.equals(EVENTLIST_VECTOR))
+        {
+            return new EventListImpl();
+        }
+        else if (!name.equals(EVENTLIST_HEAP))
+        {
+            System.out.println("Warning: unknown event list \"" + name +
+                               "\", using " + EVENTLIST_HEAP);
+        }
+
+        return new HeapEventList();
+    }
+
     public void runSimulator()
     {
-        Event next;
+        if (host != this)
+        {
+            throw new IllegalStateException("flow " + flow +
+                                            " is run by its host");
+        }
         
-        // Perform any student-required initialization
-        aInit();
-        bInit();
+        // Without a sink of our own, deliver to OutputFile through the
+        // sink chosen with -Dsink
+        if (outFile == null)
+        {
+            try{
+                outFile = DeliverySink.open(
+                              System.getProperty(DeliverySink.PROPERTY,
+                                                 ChannelDeliverySink.NAME),
+                              "OutputFile");
+            }catch (IOException e) {throw new UncheckedIOException(e);}
+        }
         
-        // Start the whole thing off by scheduling some data arrival
-        // from layer 5
-        generateNextArrival();
+        if ((recorder == null) &&
+            (System.getProperty(TraceRecorder.PROPERTY) != null))
+        {
+            try{
+                recorder = new TraceRecorder(
+                               System.getProperty(TraceRecorder.PROPERTY));
+            }catch (IOException e) {throw new UncheckedIOException(e);}
+        }
+        
+        log = new SimulatorLog(out, traceLevel,
+                               !SimulatorLog.SYNC.equals(
+                                   System.getProperty(SimulatorLog.PROPERTY)));
         
-        // Begin the main loop
-        while (true)
+        // Every flow writes through the host's log, sink and recorder
+        for (NetworkSimulator f : flows)
         {
-            // Get our next event
-            next = eventList.removeNext();
-            if (next == null)
-            {
-                break;
-            }
-            
-            if (traceLevel >= 2)
+            f.log = log;
+            f.outFile = outFile;
+            f.recorder = recorder;
+        }
+        
+        String interval = System.getProperty(SimulatorMetrics.INTERVAL_PROPERTY);
+        if ((interval != null) && !metrics.hasListener())
+        {
+            setMetricsListener(
+                m -> log.log(SimulatorLog.ALWAYS, m.toString()),
+                Long.parseLong(interval));
+        }
+        boolean jmx = SimulatorMetrics.JMX.equals(
+                          System.getProperty(SimulatorMetrics.PROPERTY));
+        if (jmx)
+        {
+            metrics.register();
+        }
+        
+        // The run ends with the event that finishes the last flow, which
+        // is its last message arrival; ties go to the higher flow, whose
+        // events come later
+        double lastTime = Double.NEGATIVE_INFINITY;
+        int lastFlow = 0;
+        for (int i = 0; i < flows.size(); i++)
+        {
+            double t = flows.get(i).lastArrivalTime();
+            if (t >= lastTime)
             {
-                System.out.println();
-                System.out.print("EVENT time: " + next.getTime());
-                System.out.print("  type: " + next.getType());
-                System.out.println("  entity: " + next.getEntity());
+                lastTime = t;
+                lastFlow = i;
             }
-            
-            // Advance the simulator's time
-            time = next.getTime();
-            
-            // Perform the appropriate action based on the event 
-            switch (next.getType())
+        }
+        
+        int n = Math.min(threads, flows.size());
+        if ((n > 1) && (recorder != null))
+        {
+            log.log(SimulatorLog.ALWAYS, "Warning: a trace is only " +
+                    "recorded on one thread; not running in parallel");
+            n = 1;
+        }
+        if ((n > 1) && sharedChannel && !(getLookahead() > 0))
+        {
+            log.log(SimulatorLog.ALWAYS, "Warning: the shared channel " +
+                    "can deliver at once; not running in parallel");
+            n = 1;
+        }
+        
+        metrics.start();
+        try
+        {
+            if (n > 1)
             {
-                case TIMERINTERRUPT:
-                    if (next.getEntity() == A)
-                    {
-                        aTimerInterrupt();
-                    }
-                    else
-                    {
-                        System.out.println("INTERNAL PANIC: Timeout for " +
-                                           "invalid entity");
-                    }
-                    break;
-                    
-                case FROMLAYER3:
-                    if (next.getEntity() == A)
-                    {
-                        aInput(next.getPacket());
-                    }
-                    else if (next.getEntity() == B)
-                    {
-                        bInput(next.getPacket());
-                    }
-                    else
+                // The engine gives every flow, this one too, a log and
+                // sink of its process; they go back to the run's after
+                SimulatorLog runLog = log;
+                DeliverySink runSink = outFile;
+                try
+                {
+                    new ParallelEngine(this, n, runLog, runSink, metrics)
+                        .run(lastTime, lastFlow);
+                }
+                finally
+                {
+                    for (NetworkSimulator f : flows)
                     {
-                        System.out.println("INTERNAL PANIC: Packet has " +
-                                           "arrived for unknown entity");
+                        f.log = runLog;
+                        f.outFile = runSink;
                     }
-                    
+                }
+            }
+            else
+            {
+                simulate(lastFlow);
+            }
+        }
+        finally
+        {
+            if (jmx)
+            {
+                metrics.unregister();
+            }
+            // Everything traced must be out before the statistics.  The
+            // sink is closed even if the run failed, so what was delivered
+            // is flushed and a mapped file is cut to its length.
+            log.close();
+            try
+            {
+                outFile.close();
+            }
+            catch (IOException e)
+            {
+                throw new UncheckedIOException(e);
+            }
+            finally
+            {
+                if (recorder != null)
+                {
+                    try{
+                        recorder.close();
+                    }catch (IOException e) {throw new UncheckedIOException(e);}
+                }
+            }
+        }
+        
+        out.println("Simulator terminated at time "+getTime());
+        for (NetworkSimulator f : flows)
+        {
+            f.Simulation_done();
+        }
+    }
+    
+    // The main loop, on this thread
+    private void simulate(int lastFlow)
+    {
+        lp.setFlows(flows, 0, flows.size());
+        lp.setOutput(log, traceLevel, recorder, metrics);
+        lp.init();
+        lp.run(Double.POSITIVE_INFINITY, Double.POSITIVE_INFINITY, lastFlow);
+    }
+    
+    // Puts flows from..to-1 in "p", a process of a parallel run, which
+    // holds their output until the end of each window
+    void partition(LogicalProcess p, int from, int to)
+    {
+        p.setFlows(flows, from, to);
+        SimulatorLog held = p.holdOutput(traceLevel);
+        DeliverySink sink = p.heldSink();
+        for (int i = from; i < to; i++)
+        {
+            NetworkSimulator f = flows.get(i);
+            f.lp = p;
+            f.eventList = p.getEventList();
+            f.log = held;
+            f.outFile = sink;
+        }
+    }
+    
+    void setProcesses(ArrayList<LogicalProcess> p)
+    {
+        processes = p;
+    }
+    
+    // Perform any student-required initialization, and start this flow
+    // off by scheduling some data arrival from layer 5
+    void init()
+    {
+        aInit();
+        bInit();
+        generateNextArrival();
+    }
+    
+    // True once all of this flow's messages have come from layer 5
+    boolean isFinished()
+    {
+        return nSim == maxMessages+1;
+    }
+    
+    // The time of the message arrival that finishes this flow.  Arrival
+    // times depend on nothing but random stream 0, so this is worked out
+    // before the run on a copy of the generator, exactly as
+    // generateNextArrival will add them up.
+    double lastArrivalTime()
+    {
+        OSIRandom r = new OSIRandom(rand);
+        double t = 0;
+        for (int i = 0; i <= maxMessages; i++)
+        {
+            t = t + 2 * avgMessageDelay * r.nextDouble(0);
+        }
+        return t;
+    }
+    
+    void dispatch(Event next, int entity)
+    {
+        // Perform the appropriate action based on the event 
+        switch (next.getType())
+        {
+            case TIMERINTERRUPT:
+                if (entity == A)
+                {
+                    aTimerInterrupt();
+                }
+                else
+                {
+                    log.log(SimulatorLog.ALWAYS, "INTERNAL PANIC: " +
+                            "Timeout for invalid entity");
+                }
+                break;
+                
+            case TIMERWHEEL:
+                fireTimers(next.getTime());
+                break;
+                
+            case FROMLAYER3:
+                if (entity == A)
+                {
+                    aInput(next.getPacket());
+                }
+                else
+                {
+                    bInput(next.getPacket());
+                }
+                
+                break;
+                
+            case FROMLAYER5:
+                
+                // A flow that is done takes no more messages
+                if (nSim == maxMessages+1)
                     break;
-                    
-                case FROMLAYER5:
-                    
-                    // If a message has arrived from layer 5, we need to
-                    // schedule the arrival of the next message
-                    generateNextArrival();
-                    
-                    char[] nextMessage = new char[MAXDATASIZE];
-                    
-                    // Now, let's generate the contents of this message
-                    char j = (char)((nSim % 26) + 97);
-                    for (int i = 0; i < MAXDATASIZE; i++)
-                    {
-                        nextMessage[i] = j;
-                    }
-                    
-                    // Increment the message counter
-                    nSim++;
-
-                    // If we've reached the maximum message count, exit the main loop
-                    if (nSim == maxMessages+1)
-                        break;
-                    
-                    // Let the student handle the new message
-                    aOutput(new Message(new String(nextMessage)));
+                
+                // If a message has arrived from layer 5, we need to
+                // schedule the arrival of the next message
+                generateNextArrival();
+                
+                byte[] nextMessage = new byte[MAXDATASIZE];
+                
+                // Now, let's generate the contents of this message
+                byte j = (byte)((nSim % 26) + 97);
+                for (int i = 0; i < MAXDATASIZE; i++)
+                {
+                    nextMessage[i] = j;
+                }
+                
+                // Increment the message counter
+                nSim++;
+
+                // If we've reached the maximum message count, this flow
+                // is done; the run ends when every flow is
+                if (nSim == maxMessages+1)
                     break;
-                    
-                default:
-                    System.out.println("INTERNAL PANIC: Unknown event type");
-            }
-            if (nSim == maxMessages+1)
+                
+                // Let the student handle the new message
+                aOutput(new Message(nextMessage));
                 break;
+                
+            default:
+                log.log(SimulatorLog.ALWAYS,
+                        "INTERNAL PANIC: Unknown event type");
         }
-        System.out.println("Simulator terminated at time "+getTime());
-        Simulation_done();
-        try{
-            outFile.flush();
-            outFile.close();
-        }catch (Exception e) {e.printStackTrace();}
+    }
+    
+    // The id of this flow's A or B in the event list
+    private int entityOf(int entity)
+    {
+        return (flow << 1) | entity;
     }
     
     /* Generate the next arrival and add it to the event list */
@@ -178,23 +582,23 @@ public abstract class NetworkSimulator
     {
         if (traceLevel > 2)
         {
-            System.out.println("generateNextArrival(): called");
+            log.log(SimulatorLog.DEBUG, "generateNextArrival(): called");
         }
         
         // arrival time 'x' is uniform on [0, 2*avgMessageDelay]
         // having mean of avgMessageDelay.  Should this be made
         // into a Gaussian distribution? 
         double x = 2 * avgMessageDelay * rand.nextDouble(0);
-        Event next = new Event(time + x, FROMLAYER5, A);
                 
-        eventList.add(next);
+        // lastArrivalTime() relies on this sum
+        eventList.add(getTime() + x, FROMLAYER5, entityOf(A), null);
         if (traceLevel > 2)
         {
-            System.out.println("generateNextArrival(): time is " + time);
-            System.out.println("generateNextArrival(): future time for " +
-                               "event " + next.getType() + " at entity " +
-                               next.getEntity() + " will be " +
-                               next.getTime());
+            log.log(SimulatorLog.DEBUG, "generateNextArrival(): time is " +
+                    getTime());
+            log.log(SimulatorLog.DEBUG, "generateNextArrival(): future " +
+                    "time for event " + FROMLAYER5 + " at entity " +
+                    entityOf(A) + " will be " + (getTime() + x));
         }
         
     }
@@ -203,17 +607,16 @@ public abstract class NetworkSimulator
     {
         if (traceLevel > 2)
         {
-            System.out.println("stopTimer: stopping timer at " + time);
+            log.log(SimulatorLog.DEBUG, "stopTimer: stopping timer at " +
+                    getTime());
         }
 
-        Event timer = eventList.removeTimer(entity);
-
         // Let the student know they are attempting to cancel a non-existant 
         // timer
-        if (timer == null)
+        if (!eventList.cancelTimer(entityOf(entity)))
         {
-            System.out.println("stopTimer: Warning: Unable to cancel your " +
-                               "timer");
+            log.log(SimulatorLog.ALWAYS, "stopTimer: Warning: Unable to " +
+                    "cancel your timer");
         }        
     }
     
@@ -221,36 +624,127 @@ public abstract class NetworkSimulator
     {
         if (traceLevel > 2)
         {
-            System.out.println("startTimer: starting timer at " + time);
+            log.log(SimulatorLog.DEBUG, "startTimer: starting timer at " +
+                    getTime());
         }
 
-        Event t = eventList.removeTimer(entity);        
+        Event t = eventList.removeTimer(entityOf(entity));        
 
         if (t != null)
         {
-            System.out.println("startTimer: Warning: Attempting to start a " +
-                               "timer that is already running");
+            log.log(SimulatorLog.ALWAYS, "startTimer: Warning: Attempting " +
+                    "to start a timer that is already running");
             eventList.add(t);
             return;
         }
         else
         {
-            Event timer = new Event(time + increment, TIMERINTERRUPT, entity);
-            eventList.add(timer);
+            eventList.add(getTime() + increment, TIMERINTERRUPT,
+                          entityOf(entity), null);
         }
     }    
     
+    // Moves the running timer at "entity" so that it expires "increment"
+    // time units from now, or starts one if none is running.  This is
+    // the same as stopTimer followed by startTimer, but reuses the timer
+    // event instead of searching for it and allocating a new one.
+    protected void rescheduleTimer(int entity, double increment)
+    {
+        if (traceLevel > 2)
+        {
+            log.log(SimulatorLog.DEBUG, "rescheduleTimer: restarting " +
+                    "timer at " + getTime());
+        }
+
+        if (!eventList.rescheduleTimer(entityOf(entity), getTime() + increment))
+        {
+            eventList.add(getTime() + increment, TIMERINTERRUPT,
+                          entityOf(entity), null);
+        }
+    }
+    
+    // Starts A's timer for "id" (a sequence number, say) so that it goes
+    // off "increment" time units from now, restarting it if it is
+    // running.  Any number of these timers can run at once, independently
+    // of the timer used by startTimer(entity, increment); each goes off
+    // by calling aTimerInterrupt(id).  Expiry times are rounded up to a
+    // multiple of -Dtimer.tick.
+    protected void startTimer(int entity, int id, double increment)
+    {
+        if (entity != A)
+        {
+            log.log(SimulatorLog.ALWAYS, "startTimer: Warning: only A " +
+                    "has per-id timers");
+            return;
+        }
+        if (traceLevel > 2)
+        {
+            log.log(SimulatorLog.DEBUG, "startTimer: starting timer " + id +
+                    " at " + getTime());
+        }
+
+        if (timers == null)
+        {
+            timers = new TimingWheel(Double.parseDouble(
+                         System.getProperty(TIMER_TICK_PROPERTY,
+                                            Double.toString(DEFAULT_TIMER_TICK))));
+        }
+        timers.start(id, getTime() + increment);
+        scheduleTimers();
+    }
+    
+    // Stops A's timer for "id".  Returns false if it was not running,
+    // which is not an error: it may just have gone off.
+    protected boolean stopTimer(int entity, int id)
+    {
+        return (entity == A) && (timers != null) && timers.cancel(id);
+    }
+    
+    // Makes sure a TIMERWHEEL event is waiting for the next time the
+    // wheel needs to move.  An earlier timer adds an earlier event; the
+    // later one is left in place and does nothing when it comes up.
+    // A wheel left idle for a while can be due to move at a time already
+    // past; it moves now instead, so the clock never goes backwards.
+    private void scheduleTimers()
+    {
+        double t = Math.max(timers.nextTime(), getTime());
+        if (t < timersWakeup)
+        {
+            eventList.add(t, TIMERWHEEL, entityOf(A), null);
+            timersWakeup = t;
+        }
+    }
+    
+    private void fireTimers(double now)
+    {
+        if (now >= timersWakeup)
+        {
+            timersWakeup = Double.POSITIVE_INFINITY;
+        }
+
+        timers.advance(now);
+        int id;
+        while ((id = timers.pollExpired()) != -1)
+        {
+            aTimerInterrupt(id);
+        }
+        scheduleTimers();
+    }
+    
     protected void toLayer3(int callingEntity, Packet p)
     {
         nToLayer3++;
         
         int destination;
         double arrivalTime;
-        Packet packet = new Packet(p);
+        
+        // A frozen packet cannot change under us, so it is passed along
+        // as is; only a corrupted copy is ever made of it
+        Packet packet = p.isFrozen() ? p : new Packet(p);
     
         if (traceLevel > 2)
         {
-            System.out.println("toLayer3: " + packet);
+            log.log(SimulatorLog.DEBUG, "toLayer3: " + packet);
         }
 
         // Set our destination
@@ -264,94 +758,234 @@ public abstract class NetworkSimulator
         }
         else
         {
-            System.out.println("toLayer3: Warning: invalid packet sender");
+            log.log(SimulatorLog.ALWAYS,
+                    "toLayer3: Warning: invalid packet sender");
             return;
         }
 
         // Simulate losses
-        if (rand.nextDouble(1) < lossProb)
+        Impairment channel = impairments[destination];
+        if (channel.isLost(getTime(), rand))
         {
             nLost++;
             
             if (traceLevel > 0)
             {
-                System.out.println("toLayer3: packet being lost");
+                log.log(SimulatorLog.EVENTS, "toLayer3: packet being lost");
             }
             
+            recordSend(callingEntity, p, true, false);
+            
             return;
         }
         
-        // Decide when the packet will arrive.  Since the medium cannot
-        // reorder, the packet will arrive 1 to 10 time units after the
-        // last packet sent by this sender
-        arrivalTime = eventList.getLastPacketTime(destination);
-        
-        if (arrivalTime <= 0.0)
-        {
-            arrivalTime = time;
-        }
-        
-        arrivalTime = arrivalTime + 1 + (rand.nextDouble(2) * 9);
-
         // Simulate corruption
-        if (rand.nextDouble(3) < corruptProb)
+        boolean corrupted = channel.isCorrupted(getTime(), rand);
+        if (corrupted)
         {
             nCorrupt++;
             
             if (traceLevel > 0)
             {
-                System.out.println("toLayer3: packet being corrupted");
+                log.log(SimulatorLog.EVENTS,
+                        "toLayer3: packet being corrupted");
             }
             
-            double x = rand.nextDouble(4);
-            if (x < 0.75)
-            {
-                String payload = packet.getPayload();
-                
-                if (payload.length()>0)
-
-                    payload = "?" + payload.substring(1);
-
-                else payload = "?";
-                
-                packet.setPayload(payload);
-            }
-            else if (x < 0.875)
-            {
-                packet.setSeqnum(999999);
-            }
-            else
+            if (packet.isFrozen())
             {
-                packet.setAcknum(999999);
+                packet = new Packet(packet);
             }
+            
+            corrupt(packet, rand.nextDouble(4));
         }
         
-
         // Finally, create and schedule this event
         if (traceLevel > 2)
         {
-            System.out.println("toLayer3: scheduling arrival on other side");
+            log.log(SimulatorLog.DEBUG,
+                    "toLayer3: scheduling arrival on other side");
+        }
+        // In a parallel run, where the packet falls in line on a shared
+        // channel is only known at the end of the window
+        if (host.sharedChannel && lp.isHolding())
+        {
+            lp.holdSend(entityOf(destination), packet);
+            return;
+        }
+        arrivalTime = channelArrival(destination, getTime(), packet);
+        recordSend(callingEntity, p, arrivalTime < 0, corrupted);
+        if (arrivalTime < 0)
+        {
+            dropped(log);
+            return;
+        }
+        // packet is already our own copy, so the event can keep it as is
+        eventList.add(arrivalTime, FROMLAYER3, entityOf(destination), packet);
+    }
+    
+    // When a packet sent to "destination" at "sendTime" arrives, or a
+    // negative number if the link to it drops the packet.  The link is
+    // the destination's own, or every flow's if the channel is shared.
+    private double channelArrival(int destination, double sendTime,
+                                  Packet packet)
+    {
+        Link link = host.sharedChannel ? host.links[destination]
+                                       : links[destination];
+        return link.send(sendTime, packet, rand);
+    }
+    
+    private void dropped(SimulatorLog to)
+    {
+        nDropped++;
+        
+        if (traceLevel > 0)
+        {
+            to.log(SimulatorLog.EVENTS, "toLayer3: packet dropped by the link");
+        }
+    }
+    
+    // Puts a send held by a parallel run through the shared channel,
+    // tracing a drop to "runLog".  Called on the host at the end of a
+    // window, in event order.
+    void sendHeld(LogicalProcess.Held h, SimulatorLog runLog)
+    {
+        NetworkSimulator f = flows.get(h.getFlow());
+        double arrivalTime = f.channelArrival(h.getEntity() & 1, h.getTime(),
+                                              h.getPacket());
+        if (arrivalTime < 0)
+        {
+            f.dropped(runLog);
+            return;
+        }
+        f.lp.addHeldSend(h, arrivalTime);
+    }
+    
+    private void recordSend(int entity, Packet p, boolean lost,
+                            boolean corrupted)
+    {
+        if (recorder != null)
+        {
+            try{
+                recorder.recordSend(getTime(), entityOf(entity), p, lost,
+                                    corrupted);
+            }catch (IOException e) {throw new UncheckedIOException(e);}
+        }
+    }
+    
+    // Corrupts "packet" in place.  "x" is uniform on [0, 1] and picks
+    // what gets damaged: the payload 3/4 of the time, otherwise the seq
+    // or the ack field.
+    protected static void corrupt(Packet packet, double x)
+    {
+        if (x < 0.75)
+        {
+            byte[] payload = packet.getPayloadBytes();
+            
+            if (payload.length>0)
+
+                payload = payload.clone();
+
+            else payload = new byte[1];
+            
+            payload[0] = '?';
+            packet.setPayload(payload);
+        }
+        else if (x < 0.875)
+        {
+            packet.setSeqnum(999999);
+        }
+        else
+        {
+            packet.setAcknum(999999);
         }
-        Event arrival = new Event(arrivalTime, FROMLAYER3, destination, packet);
-        eventList.add(arrival);
     }
     
     protected void toLayer5(String dataSent)
+    {
+        for (int i = 0; i < MAXDATASIZE; i++)
+        {
+            deliveryBuffer[i] = (byte)dataSent.charAt(i);
+        }
+        toLayer5(deliveryBuffer);
+    }
+    
+    protected void toLayer5(byte[] dataSent)
     {
         try{
-            outFile.write(dataSent,0,MAXDATASIZE);
-            outFile.write('\n');
-        }catch (Exception e) {e.printStackTrace();}
+            outFile.deliver(dataSent, MAXDATASIZE);
+        }catch (IOException e) {throw new UncheckedIOException(e);}
     }
     
     protected double getTime()
     {
-        return time;
+        return lp.getTime();
+    }
+    
+    // Number of events dispatched so far, by all flows
+    public long getEventCount()
+    {
+        long n = 0;
+        for (LogicalProcess p : host.processes)
+        {
+            n += p.getEventCount();
+        }
+        return n;
+    }
+    
+    protected int getToLayer3Count()
+    {
+        return nToLayer3;
+    }
+    
+    protected int getLostCount()
+    {
+        return nLost;
+    }
+    
+    protected int getCorruptCount()
+    {
+        return nCorrupt;
+    }
+    
+    // Packets the link dropped, as against lost at random
+    protected int getDroppedCount()
+    {
+        return nDropped;
+    }
+    
+    protected int getEventListDepth()
+    {
+        int n = 0;
+        for (LogicalProcess p : host.processes)
+        {
+            n += p.getEventList().size();
+        }
+        return n;
+    }
+    
+    // Packets waiting in the sender's buffer, or -1 if the protocol does
+    // not say
+    protected int getSenderBufferOccupancy()
+    {
+        return -1;
+    }
+    
+    // Packets sent but not yet acknowledged, or -1 if the protocol does
+    // not say
+    protected int getInFlightCount()
+    {
+        return -1;
+    }
+    
+    // The protocol's counters so far, or null if it does not keep any
+    public SimulationStatistics getStatistics()
+    {
+        return null;
     }
     
     protected void printEventList()
     {
-        System.out.println(eventList.toString());
+        log.log(SimulatorLog.ALWAYS, eventList.toString());
     }
     
 }
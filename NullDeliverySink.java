@@ -0,0 +1,13 @@
+// Discards everything, for benchmarks
+public class NullDeliverySink implements DeliverySink
+{
+    public static final String NAME = "null";
+
+    public void deliver(byte[] data, int length)
+    {
+    }
+
+    public void close()
+    {
+    }
+}
@@ -1,13 +1,19 @@
 public class OSIRandom
 {
-    private long seed[] = new long[5];
+    private long seed[] = new long[6];
 
     public OSIRandom(int s)
     {
-	for (int i=0;i<5;i++)
+	for (int i=0;i<6;i++)
 	  seed[i] = (s+i) & 0xFFFFFFFFL;
     }
 
+    // A generator that will draw the same numbers as "other" from here on
+    public OSIRandom(OSIRandom other)
+    {
+	seed = other.seed.clone();
+    }
+
     public int nextInt(int i)
     {
 	seed[i] = ((seed[i]&0xFFFFFFFFL)*(1103515245&0xFFFFFFFFL)+12345)&0xFFFFFFFFL;
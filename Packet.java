@@ -1,16 +1,29 @@
+import java.nio.charset.StandardCharsets;
+
 public class Packet
 {
     private int seqnum;
     private int acknum;
     private int checksum;
+    
+    // The payload is kept as a String, as bytes, or both, like Message.
+    // Both are null if the payload given was too long.
     private String payload;
+    private byte[] payloadBytes;
     
+    // Once frozen a packet can no longer be changed, so the simulator can
+    // pass it along without copying it
+    private boolean frozen;
+    
+    // The copy is never frozen, even if "p" is
     public Packet(Packet p)
     {
         seqnum = p.getSeqnum();
         acknum = p.getAcknum();
         checksum = p.getChecksum();
-        payload = new String(p.getPayload());
+        payload = p.payload;
+        payloadBytes = p.payloadBytes;
+        frozen = false;
     }
     
     public Packet(int seq, int ack, int check, String newPayload)
@@ -28,8 +41,26 @@ public class Packet
         }
         else
         {
-            payload = new String(newPayload);
+            payload = newPayload;
+        }
+        frozen = false;
+    }
+    
+    // The array is used as is, not copied, and must not be changed later
+    public Packet(int seq, int ack, int check, byte[] newPayload)
+    {
+        seqnum = seq;
+        acknum = ack;
+        checksum = check;
+        if (newPayload == null)
+        {
+            payload = "";
+        }        
+        else if (newPayload.length <= NetworkSimulator.MAXDATASIZE)
+        {
+            payloadBytes = newPayload;
         }
+        frozen = false;
     }
     
     public Packet(int seq, int ack, int check)
@@ -38,29 +69,64 @@ public class Packet
         acknum = ack;
         checksum = check;
         payload = "";
+        frozen = false;
     }    
+    
+    // Makes this packet read-only and returns it.  The setters fail on a
+    // frozen packet.
+    public Packet freeze()
+    {
+        frozen = true;
+        return this;
+    }
+    
+    public boolean isFrozen()
+    {
+        return frozen;
+    }
         
 
     public boolean setSeqnum(int n)
     {
+        if (frozen)
+        {
+            return false;
+        }
+        
         seqnum = n;
         return true;
     }
     
     public boolean setAcknum(int n)
     {
+        if (frozen)
+        {
+            return false;
+        }
+        
         acknum = n;
         return true;
     }
     
     public boolean setChecksum(int n)
     {
+        if (frozen)
+        {
+            return false;
+        }
+        
         checksum = n;
         return true;
     }
     
     public boolean setPayload(String newPayload)
     {
+        if (frozen)
+        {
+            return false;
+        }
+        
+        payloadBytes = null;
         if (newPayload == null)
         {
             payload = "";
@@ -73,7 +139,34 @@ public class Packet
         }
         else
         {
-            payload = new String(newPayload);
+            payload = newPayload;
+            return true;
+        }
+    }
+    
+    // The array is used as is, not copied, and must not be changed later
+    public boolean setPayload(byte[] newPayload)
+    {
+        if (frozen)
+        {
+            return false;
+        }
+        else if (newPayload == null)
+        {
+            payload = "";
+            payloadBytes = null;
+            return false;
+        }        
+        else if (newPayload.length > NetworkSimulator.MAXDATASIZE)
+        {
+            payload = "";
+            payloadBytes = null;
+            return false;
+        }
+        else
+        {
+            payload = null;
+            payloadBytes = newPayload;
             return true;
         }
     }
@@ -95,13 +188,27 @@ public class Packet
     
     public String getPayload()
     {
+        if ((payload == null) && (payloadBytes != null))
+        {
+            payload = new String(payloadBytes, StandardCharsets.ISO_8859_1);
+        }
         return payload;
     }
     
+    // The returned array must not be changed
+    public byte[] getPayloadBytes()
+    {
+        if ((payloadBytes == null) && (payload != null))
+        {
+            payloadBytes = payload.getBytes(StandardCharsets.ISO_8859_1);
+        }
+        return payloadBytes;
+    }
+    
     public String toString()
     {
         return("seqnum: " + seqnum + "  acknum: " + acknum + "  checksum: " +
-               checksum + "  payload: " + payload);
+               checksum + "  payload: " + getPayload());
     }
     
 }
@@ -0,0 +1,95 @@
+import java.util.Arrays;
+
+// A fixed-capacity FIFO of packets in a circular array.  Packets are
+// addressed by their offset from the oldest one, so with consecutive
+// sequence numbers a packet's position follows from its sequence number
+// and no search is needed.  Adding, indexing and dropping any number of
+// packets from the front are all O(1).
+public class PacketRing
+{
+    private Packet[] ring;
+    private int head;
+    private int size;
+
+    public PacketRing(int capacity)
+    {
+        ring = new Packet[capacity];
+        head = 0;
+        size = 0;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public int capacity()
+    {
+        return ring.length;
+    }
+
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    public boolean isFull()
+    {
+        return size == ring.length;
+    }
+
+    // Returns false, and adds nothing, if the ring is full
+    public boolean add(Packet p)
+    {
+        if (size == ring.length)
+        {
+            return false;
+        }
+
+        ring[wrap(head + size)] = p;
+        size++;
+        return true;
+    }
+
+    // The packet "offset" places after the oldest one
+    public Packet get(int offset)
+    {
+        if ((offset < 0) || (offset >= size))
+        {
+            throw new IndexOutOfBoundsException("offset " + offset +
+                                                ", size " + size);
+        }
+
+        return ring[wrap(head + offset)];
+    }
+
+    // Drops the "n" oldest packets
+    public void removeFirst(int n)
+    {
+        if ((n < 0) || (n > size))
+        {
+            throw new IndexOutOfBoundsException("remove " + n +
+                                                ", size " + size);
+        }
+
+        // Clear the references so acknowledged packets can be collected;
+        // at most two runs, one on each side of the wrap point
+        int end = head + n;
+        if (end <= ring.length)
+        {
+            Arrays.fill(ring, head, end, null);
+        }
+        else
+        {
+            Arrays.fill(ring, head, ring.length, null);
+            Arrays.fill(ring, 0, end - ring.length, null);
+        }
+        head = wrap(end);
+        size -= n;
+    }
+
+    private int wrap(int i)
+    {
+        return (i >= ring.length) ? i - ring.length : i;
+    }
+}
@@ -0,0 +1,305 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.concurrent.BrokenBarrierException;
+import java.util.concurrent.CyclicBarrier;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Runs a simulator's flows on several threads as a conservative parallel
+// discrete-event simulation.  The flows are split into contiguous blocks,
+// each a LogicalProcess with its own event list and clock, and every
+// process runs on a thread of its own.
+//
+// Time goes forward in windows.  Each process dispatches its events in
+// the window, then all of them meet at a barrier.  Flows only affect each
+// other through a shared channel, where a packet's arrival time depends on
+// every packet sent ahead of it, and whether it gets there at all.  Sends
+// on it are held back until the barrier, then put through the channel in
+// event order and added to their flows' event lists, still in the future.
+// So a window must end before anything sent in it could arrive: nothing
+// is sent before the earliest event left, and the channel's links say how
+// soon after that a packet can get through, given what is already queued
+// on them (Link.getEarliestArrival).  A busy channel lets windows run far
+// ahead.  Without a shared channel the flows never meet and a window can
+// be any length.
+//
+// Within that bound, windows are sized to hold about TICK_EVENTS events
+// per process, from how many the last one held, so barriers stay rare
+// next to the work done between them whatever the event density.
+// -Dengine.window=<time units> fixes the size instead.
+//
+// Console text and deliveries are held back the same way and written out
+// at the barrier in event order: by the time of the event that made them,
+// then by flow, which is the order the single-threaded loop dispatches
+// events in.  The run ends with the event that finishes the last flow,
+// and that is known before the run starts.  So the parallel run
+// dispatches the same events, to the same effect, as a sequential one.
+public class ParallelEngine
+{
+    public static final String THREADS_PROPERTY = "engine.threads";
+    public static final String WINDOW_PROPERTY = "engine.window";
+
+    private static final Comparator<LogicalProcess.Held> BY_EVENT =
+        Comparator.comparingDouble(LogicalProcess.Held::getTime)
+                  .thenComparingInt(LogicalProcess.Held::getFlow);
+
+    private NetworkSimulator host;
+    private SimulatorLog log;
+    private DeliverySink sink;
+    private SimulatorMetrics metrics;
+    private ArrayList<LogicalProcess> processes;
+
+    // The length of the next window, and whether it was set with
+    // -Dengine.window
+    private double window;
+    private boolean fixedWindow;
+
+    // Events dispatched by the end of the last window, and windows run
+    private long lastEvents;
+    private long windows;
+
+    private double lastTime;
+    private int lastFlow;
+
+    // Set at each barrier for the next window
+    private double start;
+    private double end;
+    private boolean done;
+
+    private CyclicBarrier barrier;
+    private AtomicReference<Throwable> failure =
+        new AtomicReference<Throwable>();
+
+    // Splits the flows of "host" into "threads" processes.  Their output
+    // goes to "log" and "sink"; "metrics" is ticked once a window.
+    public ParallelEngine(NetworkSimulator host, int threads,
+                          SimulatorLog log, DeliverySink sink,
+                          SimulatorMetrics metrics)
+    {
+        this.host = host;
+        this.log = log;
+        this.sink = sink;
+        this.metrics = metrics;
+
+        int n = host.getFlowCount();
+        processes = new ArrayList<LogicalProcess>();
+        for (int p = 0; p < threads; p++)
+        {
+            LogicalProcess lp = new LogicalProcess(new HeapEventList());
+            host.partition(lp, (int)((long)n * p / threads),
+                           (int)((long)n * (p + 1) / threads));
+            processes.add(lp);
+        }
+        host.setProcesses(processes);
+
+        fixedWindow = System.getProperty(WINDOW_PROPERTY) != null;
+        window = SimulatorProperties.getDouble(WINDOW_PROPERTY,
+                                               NetworkSimulator.LOOKAHEAD);
+        if (!(window > 0))
+        {
+            throw new IllegalArgumentException("bad engine window: " + window);
+        }
+        lastEvents = 0;
+        windows = 0;
+    }
+
+    // Windows run so far, each ending at a barrier
+    public long getWindowCount()
+    {
+        return windows;
+    }
+
+    // Runs until the event that finishes flow "lastFlow", which comes at
+    // "lastTime" and after every other flow has finished
+    public void run(double lastTime, int lastFlow)
+    {
+        this.lastTime = lastTime;
+        this.lastFlow = lastFlow;
+        barrier = new CyclicBarrier(processes.size(), this::endWindow);
+
+        // This thread runs the first process
+        ArrayList<Thread> workers = new ArrayList<Thread>();
+        for (int p = 1; p < processes.size(); p++)
+        {
+            LogicalProcess lp = processes.get(p);
+            Thread t = new Thread(() -> work(lp), "ParallelEngine-" + p);
+            t.setDaemon(true);
+            t.start();
+            workers.add(t);
+        }
+        work(processes.get(0));
+        for (Thread t : workers)
+        {
+            try
+            {
+                t.join();
+            }
+            catch (InterruptedException e)
+            {
+                Thread.currentThread().interrupt();
+                failure.compareAndSet(null, e);
+            }
+        }
+
+        // Every flow ends at the time of the last event, as on one thread
+        double t = Double.NEGATIVE_INFINITY;
+        for (LogicalProcess lp : processes)
+        {
+            t = Math.max(t, lp.getTime());
+        }
+        for (LogicalProcess lp : processes)
+        {
+            lp.setTime(t);
+        }
+
+        Throwable e = failure.get();
+        if (e instanceof RuntimeException)
+        {
+            throw (RuntimeException)e;
+        }
+        if (e instanceof Error)
+        {
+            throw (Error)e;
+        }
+        if (e != null)
+        {
+            throw new IllegalStateException("parallel run failed", e);
+        }
+    }
+
+    private void work(LogicalProcess lp)
+    {
+        try
+        {
+            lp.init();
+        }
+        catch (Throwable e)
+        {
+            failure.compareAndSet(null, e);
+        }
+
+        while (true)
+        {
+            try
+            {
+                barrier.await();
+            }
+            catch (InterruptedException | BrokenBarrierException e)
+            {
+                failure.compareAndSet(null, e);
+                barrier.reset();
+                return;
+            }
+            if (done)
+            {
+                return;
+            }
+
+            try
+            {
+                lp.run(end, lastTime, lastFlow);
+            }
+            catch (Throwable e)
+            {
+                failure.compareAndSet(null, e);
+            }
+        }
+    }
+
+    // Runs on the last thread to reach the barrier, with every process
+    // stopped
+    private void endWindow()
+    {
+        try
+        {
+            // Lists come in process order and each is in event order, so a
+            // stable sort by event keeps every flow's own order
+            ArrayList<LogicalProcess.Held> held =
+                new ArrayList<LogicalProcess.Held>();
+            for (LogicalProcess lp : processes)
+            {
+                held.addAll(lp.takeHeld());
+            }
+            held.sort(BY_EVENT);
+            for (LogicalProcess.Held h : held)
+            {
+                switch (h.getKind())
+                {
+                    case LogicalProcess.TEXT:
+                        String text = new String(h.getData());
+                        log.log(SimulatorLog.ALWAYS,
+                                text.substring(0, text.length() -
+                                               System.lineSeparator().length()));
+                        break;
+
+                    case LogicalProcess.DELIVERY:
+                        sink.deliver(h.getData(), h.getData().length);
+                        break;
+
+                    case LogicalProcess.SEND:
+                        host.sendHeld(h, log);
+                        break;
+                }
+            }
+
+            if ((failure.get() != null) ||
+                host.getFlow(lastFlow).isFinished())
+            {
+                done = true;
+                return;
+            }
+            if (metrics.tick())
+            {
+                log.log(SimulatorLog.ALWAYS, "Simulation stopped at time " +
+                        end + " on request");
+                done = true;
+                return;
+            }
+
+            // Size the next window from the events the last one held for
+            // its length, growing it at most twofold
+            long events = host.getEventCount();
+            if (!fixedWindow && (windows > 0))
+            {
+                double target = (double)SimulatorMetrics.TICK_EVENTS *
+                                processes.size();
+                window = (end - start) *
+                         Math.min(2, target / Math.max(1, events - lastEvents));
+            }
+            lastEvents = events;
+            windows++;
+
+            // The next window starts at the earliest event left
+            Event next = new Event(0, 0, 0);
+            start = Double.POSITIVE_INFINITY;
+            for (LogicalProcess lp : processes)
+            {
+                if (lp.getEventList().peekNext(next))
+                {
+                    start = Math.min(start, next.getTime());
+                }
+            }
+            if (start == Double.POSITIVE_INFINITY)
+            {
+                done = true;
+                return;
+            }
+            end = start + window;
+            if (host.isSharedChannel())
+            {
+                end = Math.min(end, host.getEarliestArrival(start));
+            }
+        }
+        catch (IOException e)
+        {
+            failure.compareAndSet(null, new UncheckedIOException(e));
+            done = true;
+        }
+        catch (RuntimeException e)
+        {
+            failure.compareAndSet(null, e);
+            done = true;
+        }
+    }
+}
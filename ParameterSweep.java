@@ -0,0 +1,220 @@
+import java.io.*;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+
+// Runs many simulations at once on a ForkJoinPool and collects their
+// statistics into one table.  Every simulator has its own random number
+// generator already; here each one also gets its own (discarded) output
+// and console, so runs share nothing and scale with the number of cores.
+//
+// Usage: java ParameterSweep [--nsim N] [--delay D] [--loss L1,L2,...]
+//            [--corrupt C1,...] [--window W1,...] [--timeout T1,...]
+//            [--seed S1,...] [--threads N]
+public class ParameterSweep
+{
+    public static class Result
+    {
+        private SweepPoint point;
+        private SimulationStatistics stats;
+        private String error;
+        private long cpuNanos;
+
+        public Result(SweepPoint point, SimulationStatistics stats,
+                      String error, long cpuNanos)
+        {
+            this.point = point;
+            this.stats = stats;
+            this.error = error;
+            this.cpuNanos = cpuNanos;
+        }
+
+        public SweepPoint getPoint()
+        {
+            return point;
+        }
+
+        // null if the run failed
+        public SimulationStatistics getStatistics()
+        {
+            return stats;
+        }
+
+        // null unless the run failed
+        public String getError()
+        {
+            return error;
+        }
+
+        // CPU time the run took on its thread
+        public long getCpuNanos()
+        {
+            return cpuNanos;
+        }
+    }
+
+    private int threads;
+
+    public ParameterSweep(int threads)
+    {
+        this.threads = threads;
+    }
+
+    // Runs every point and returns the results in the same order
+    public List<Result> run(List<SweepPoint> points)
+    {
+        ForkJoinPool pool = new ForkJoinPool(threads);
+        try
+        {
+            List<Future<Result>> futures = new ArrayList<Future<Result>>();
+            for (SweepPoint point : points)
+            {
+                futures.add(pool.submit(() -> runOne(point)));
+            }
+
+            List<Result> results = new ArrayList<Result>();
+            for (Future<Result> f : futures)
+            {
+                try
+                {
+                    results.add(f.get());
+                }
+                catch (InterruptedException | ExecutionException e)
+                {
+                    throw new RuntimeException(e);
+                }
+            }
+            return results;
+        }
+        finally
+        {
+            pool.shutdown();
+        }
+    }
+
+    public static Result runOne(SweepPoint point)
+    {
+        StudentNetworkSimulator simulator = point.createSimulator();
+        simulator.setDeliverySink(new NullDeliverySink());
+        simulator.setConsole(new PrintStream(OutputStream.nullOutputStream()));
+
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long start = threads.getCurrentThreadCpuTime();
+        try
+        {
+            simulator.runSimulator();
+        }
+        catch (RuntimeException e)
+        {
+            return new Result(point, null, e.toString(),
+                              threads.getCurrentThreadCpuTime() - start);
+        }
+        return new Result(point, simulator.getStatistics(), null,
+                          threads.getCurrentThreadCpuTime() - start);
+    }
+
+    public static void printTable(List<Result> results, PrintStream out)
+    {
+        out.printf("%6s %7s %6s %7s %5s %7s %6s %7s %6s %6s %9s %9s %9s %9s %9s %9s %8s%n",
+                   "loss", "corrupt", "window", "timeout", "seed",
+                   "orig", "rxm", "deliver", "acks", "corr",
+                   "lostRat", "corrRat", "avgRTT", "p99RTT", "avgCom", "p99Com",
+                   "cpu ms");
+        for (Result r : results)
+        {
+            SweepPoint p = r.getPoint();
+            out.printf("%6.3f %7.3f %6d %7.1f %5d ",
+                       p.getLoss(), p.getCorrupt(), p.getWindowsize(),
+                       p.getTimeout(), p.getSeed());
+            SimulationStatistics s = r.getStatistics();
+            if (s == null)
+            {
+                out.printf("FAILED: %s%n", r.getError());
+                continue;
+            }
+            out.printf("%7d %6d %7d %6d %6d %9.4f %9.4f %9.3f %9.3f %9.3f %9.3f %8.1f%n",
+                       s.getOriginalPackets(), s.getRetransmissions(),
+                       s.getDelivered(), s.getAcksSent(), s.getCorrupted(),
+                       s.getLostRatio(), s.getCorruptedRatio(),
+                       s.getAverageRTT(), s.getRTTHistogram().getPercentile(99),
+                       s.getAverageComTime(),
+                       s.getComTimeHistogram().getPercentile(99),
+                       r.getCpuNanos() / 1e6);
+        }
+    }
+
+    public static void main(String[] argv)
+    {
+        int nsim = 1000;
+        double delay = 10;
+        double[] loss = {0.0, 0.1, 0.2};
+        double[] corrupt = {0.0, 0.1, 0.2};
+        double[] window = {8, 16};
+        double[] timeout = {20, 30};
+        double[] seed = {1};
+        int threads = Runtime.getRuntime().availableProcessors();
+
+        for (int i = 0; i + 1 < argv.length; i += 2)
+        {
+            String value = argv[i + 1];
+            switch (argv[i])
+            {
+                case "--nsim":    nsim = Integer.parseInt(value); break;
+                case "--delay":   delay = Double.parseDouble(value); break;
+                case "--loss":    loss = parseList(value); break;
+                case "--corrupt": corrupt = parseList(value); break;
+                case "--window":  window = parseList(value); break;
+                case "--timeout": timeout = parseList(value); break;
+                case "--seed":    seed = parseList(value); break;
+                case "--threads": threads = Integer.parseInt(value); break;
+                default:
+                    System.out.println("Unknown option " + argv[i]);
+                    System.exit(1);
+            }
+        }
+
+        List<SweepPoint> points = new ArrayList<SweepPoint>();
+        for (double l : loss)
+            for (double c : corrupt)
+                for (double w : window)
+                    for (double t : timeout)
+                        for (double s : seed)
+                            points.add(new SweepPoint(nsim, l, c, delay,
+                                                      (int)w, t, (int)s));
+
+        long start = System.nanoTime();
+        List<Result> results = new ParameterSweep(threads).run(points);
+        long wall = System.nanoTime() - start;
+
+        printTable(results, System.out);
+
+        // Parallelism is the runs' CPU time over the wall time: how many
+        // threads were busy on average, at most the number of threads.
+        // It is not a speed-up over a sequential sweep, which would also
+        // need a one-thread run to compare against.
+        long busy = 0;
+        for (Result r : results)
+        {
+            busy += r.getCpuNanos();
+        }
+        System.out.printf("%n%d runs on %d threads: wall %.1f ms, " +
+                          "CPU %.1f ms, parallelism %.2f%n",
+                          results.size(), threads, wall / 1e6, busy / 1e6,
+                          (double)busy / wall);
+    }
+
+    private static double[] parseList(String s)
+    {
+        String[] parts = s.split(",");
+        double[] values = new double[parts.length];
+        for (int i = 0; i < parts.length; i++)
+        {
+            values[i] = Double.parseDouble(parts[i].trim());
+        }
+        return values;
+    }
+}
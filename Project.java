@@ -1,9 +1,28 @@
 import java.io.*;
+import java.util.Properties;
 
 public class Project
 {
+    // Parameter names, used both as command line flags (--nsim 100 or
+    // --nsim=100) and as keys in a config file
+    private static final String[] PARAMETERS = {
+        "nsim", "loss", "corrupt", "delay", "windowsize", "timeout",
+        "trace", "seed", "output"
+    };
+    
+    // Same defaults as the interactive prompts
+    private static final String[] DEFAULTS = {
+        "10", "0.0", "0.0", "1000", "8", "15.0", "0", "0", "OutputFile"
+    };
+    
     public final static void main(String[] argv)
     {
+        if (argv.length > 0)
+        {
+            runFromArguments(argv);
+            return;
+        }
+        
         StudentNetworkSimulator simulator;
         
         int nsim = -1;
@@ -270,4 +289,189 @@ public class Project
                                                 
         simulator.runSimulator();
     }
+    
+    // Non-interactive runs.  Every parameter can be given on the command
+    // line; "--config file" reads them from a properties file instead,
+    // with the command line taking precedence.  A config file may also
+    // list several runs, which all execute in this JVM one after another:
+    //
+    //     nsim = 10000
+    //     runs = low, high
+    //     low.loss = 0.1
+    //     high.loss = 0.4
+    //
+    // Keys prefixed with a run name override the shared ones for that run,
+    // and the command line overrides both.
+    // Unless "output" is set, run "name" delivers to OutputFile-name.
+    private static void runFromArguments(String[] argv)
+    {
+        Properties base = new Properties();
+        Properties flags = new Properties();
+        String config = null;
+        
+        for (int i = 0; i < argv.length; i++)
+        {
+            if (!argv[i].startsWith("--"))
+            {
+                usage("Unexpected argument " + argv[i]);
+            }
+            
+            String name = argv[i].substring(2);
+            String value;
+            int eq = name.indexOf('=');
+            if (eq >= 0)
+            {
+                value = name.substring(eq + 1);
+                name = name.substring(0, eq);
+            }
+            else if (i + 1 < argv.length)
+            {
+                value = argv[++i];
+            }
+            else
+            {
+                usage("Missing value for --" + name);
+                return;
+            }
+            
+            if (name.equals("config"))
+            {
+                config = value;
+            }
+            else if (isParameter(name))
+            {
+                flags.setProperty(name, value);
+            }
+            else
+            {
+                usage("Unknown option --" + name);
+            }
+        }
+        
+        if (config != null)
+        {
+            try (Reader in = new FileReader(config))
+            {
+                base.load(in);
+            }
+            catch (IOException ioe)
+            {
+                System.out.println("Cannot read config file " + config +
+                                   ": " + ioe.getMessage());
+                System.exit(1);
+            }
+        }
+        
+        String runs = base.getProperty("runs", "").trim();
+        if (runs.isEmpty())
+        {
+            runOnce(null, base, flags);
+            return;
+        }
+        
+        for (String run : runs.split(","))
+        {
+            runOnce(run.trim(), base, flags);
+        }
+    }
+    
+    private static void runOnce(String run, Properties base, Properties flags)
+    {
+        String[] values = new String[PARAMETERS.length];
+        for (int i = 0; i < PARAMETERS.length; i++)
+        {
+            String name = PARAMETERS[i];
+            values[i] = DEFAULTS[i];
+            if ((run != null) && name.equals("output"))
+            {
+                values[i] = "OutputFile-" + run;
+            }
+            values[i] = base.getProperty(name, values[i]);
+            if (run != null)
+            {
+                values[i] = base.getProperty(run + "." + name, values[i]);
+            }
+            values[i] = flags.getProperty(name, values[i]);
+            values[i] = values[i].trim();
+        }
+        
+        int nsim = -1;
+        double loss = -1;
+        double corrupt = -1;
+        double delay = -1;
+        int windowsize = -1;
+        double timeout = -1;
+        int trace = -1;
+        int seed = -1;
+        try
+        {
+            nsim = Integer.parseInt(values[0]);
+            loss = Double.parseDouble(values[1]);
+            corrupt = Double.parseDouble(values[2]);
+            delay = Double.parseDouble(values[3]);
+            windowsize = Integer.parseInt(values[4]);
+            timeout = Double.parseDouble(values[5]);
+            trace = Integer.parseInt(values[6]);
+            seed = Integer.parseInt(values[7]);
+        }
+        catch (NumberFormatException nfe)
+        {
+            usage("Bad number: " + nfe.getMessage());
+        }
+        
+        if ((nsim < 1) || (loss < 0) || (corrupt < 0) || (delay <= 0) ||
+            (windowsize < 1) || (timeout <= 0) || (trace < 0) || (seed < 0))
+        {
+            usage("Parameter out of range");
+        }
+        
+        if (run != null)
+        {
+            System.out.println("-- * Run " + run + " * --");
+        }
+        
+        StudentNetworkSimulator simulator =
+            new StudentNetworkSimulator(nsim, loss, corrupt, delay,
+                                        trace, seed, windowsize, timeout);
+        try
+        {
+            simulator.setDeliverySink(DeliverySink.open(
+                System.getProperty(DeliverySink.PROPERTY,
+                                   ChannelDeliverySink.NAME),
+                values[8]));
+        }
+        catch (IOException ioe)
+        {
+            System.out.println("Cannot open output file " + values[8] +
+                               ": " + ioe.getMessage());
+            System.exit(1);
+        }
+        
+        simulator.runSimulator();
+    }
+    
+    private static boolean isParameter(String name)
+    {
+        for (String p : PARAMETERS)
+        {
+            if (p.equals(name))
+            {
+                return true;
+            }
+        }
+        return false;
+    }
+    
+    private static void usage(String problem)
+    {
+        System.out.println(problem);
+        System.out.println("Usage: java Project [--config file] [--nsim N] " +
+                           "[--loss P] [--corrupt P] [--delay T]");
+        System.out.println("                    [--windowsize N] " +
+                           "[--timeout T] [--trace N] [--seed N] " +
+                           "[--output file]");
+        System.out.println("With no arguments the parameters are asked for " +
+                           "interactively.");
+        System.exit(1);
+    }
 }
@@ -0,0 +1,121 @@
+// A link of finite bandwidth fed by a bounded FIFO queue, like a router's
+// output port.  A packet waits for the ones ahead of it to go out, takes
+// its size over the bandwidth to go out itself, then the propagation
+// delay to get to the other end.  A packet that finds the queue full is
+// dropped (drop-tail).
+//
+// Set with -Dlink.bandwidth=<bytes per time unit>, -Dlink.delay=<time
+// units> and -Dlink.buffer=<packets>; the buffer counts the packet going
+// out.  A packet's size is its payload plus HEADER_BYTES.
+public class QueueLink implements Link
+{
+    public static final String NAME = "droptail";
+
+    public static final String BANDWIDTH_PROPERTY = "link.bandwidth";
+    public static final String DELAY_PROPERTY = "link.delay";
+    public static final String BUFFER_PROPERTY = "link.buffer";
+
+    public static final double DEFAULT_BANDWIDTH = 16;
+    public static final double DEFAULT_DELAY = 5;
+    public static final int DEFAULT_BUFFER = 20;
+
+    // Sequence number, ack number and checksum
+    public static final int HEADER_BYTES = 12;
+
+    protected double bandwidth;
+    protected double propagation;
+    protected int buffer;
+
+    // When each packet in the queue finishes going out, oldest first, in
+    // a ring
+    private double[] departures;
+    private int head;
+    private int count;
+
+    // When the last packet sent finishes going out
+    private double lastDeparture;
+
+    public QueueLink()
+    {
+        this(SimulatorProperties.getDouble(BANDWIDTH_PROPERTY,
+                                           DEFAULT_BANDWIDTH),
+             SimulatorProperties.getDouble(DELAY_PROPERTY, DEFAULT_DELAY),
+             Integer.getInteger(BUFFER_PROPERTY, DEFAULT_BUFFER));
+    }
+
+    public QueueLink(double bandwidth, double propagation, int buffer)
+    {
+        if ((bandwidth <= 0) || (propagation < 0) || (buffer < 1))
+        {
+            throw new IllegalArgumentException("bad link: bandwidth " +
+                                               bandwidth + ", delay " +
+                                               propagation + ", buffer " +
+                                               buffer);
+        }
+
+        this.bandwidth = bandwidth;
+        this.propagation = propagation;
+        this.buffer = buffer;
+        departures = new double[buffer];
+        head = 0;
+        count = 0;
+        lastDeparture = 0;
+    }
+
+    public double send(double time, Packet packet, OSIRandom rand)
+    {
+        // Whatever has gone out by now has left the queue
+        while ((count > 0) && (departures[head] <= time))
+        {
+            head = (head + 1) % buffer;
+            count--;
+        }
+
+        if ((count >= buffer) || drop(count, time, rand))
+        {
+            return -1;
+        }
+
+        byte[] payload = packet.getPayloadBytes();
+        int size = HEADER_BYTES + ((payload == null) ? 0 : payload.length);
+        lastDeparture = Math.max(lastDeparture, time) + size / bandwidth;
+        departures[(head + count) % buffer] = lastDeparture;
+        count++;
+        return lastDeparture + propagation;
+    }
+
+    // Whether to drop a packet that comes at "time" to find "queued"
+    // packets ahead of it, with room for it in the buffer.  Drop-tail
+    // never does.
+    protected boolean drop(int queued, double time, OSIRandom rand)
+    {
+        return false;
+    }
+
+    // When the queue last went empty, for a packet that finds it so
+    protected double getIdleSince()
+    {
+        return lastDeparture;
+    }
+
+    // How long a full-sized data packet takes to go out
+    protected double getTransmitTime()
+    {
+        return (HEADER_BYTES + NetworkSimulator.MAXDATASIZE) / bandwidth;
+    }
+
+    public double getLookahead()
+    {
+        return HEADER_BYTES / bandwidth + propagation;
+    }
+
+    public double getEarliestArrival(double time)
+    {
+        return Math.max(lastDeparture, time) + getLookahead();
+    }
+
+    public String getName()
+    {
+        return NAME;
+    }
+}
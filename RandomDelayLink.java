@@ -0,0 +1,38 @@
+// The original channel: since the medium cannot reorder, a packet
+// arrives 1 to 10 time units after the packet ahead of it, or after it
+// was sent if nothing is ahead.  Random stream 2 picks where.  There is
+// no limit on how much it carries.
+public class RandomDelayLink implements Link
+{
+    public static final String NAME = "random";
+
+    // Arrival time of the last packet sent
+    private double tail;
+
+    public RandomDelayLink()
+    {
+        tail = 0;
+    }
+
+    public double send(double time, Packet packet, OSIRandom rand)
+    {
+        double arrivalTime = Math.max(tail, time);
+        tail = arrivalTime + 1 + (rand.nextDouble(2) * 9);
+        return tail;
+    }
+
+    public double getLookahead()
+    {
+        return 1;
+    }
+
+    public double getEarliestArrival(double time)
+    {
+        return Math.max(tail, time) + 1;
+    }
+
+    public String getName()
+    {
+        return NAME;
+    }
+}
@@ -0,0 +1,95 @@
+// QueueLink with Random Early Detection (Floyd and Jacobson, 1993) in
+// place of drop-tail.  The queue keeps a moving average of its length;
+// below the minimum threshold nothing is dropped, above the maximum
+// everything is, and in between a packet is dropped with a chance that
+// rises linearly to maxp, spread out by how many packets got through
+// since the last drop.  Senders hear about congestion before the queue
+// is full, and one at a time rather than all at once.
+//
+// Set with -Dred.min=<packets>, -Dred.max=<packets>, -Dred.maxp=<p> and
+// -Dred.weight=<w>; the thresholds default to a quarter and three
+// quarters of the buffer.  Drops draw on random stream 5.
+public class RedLink extends QueueLink
+{
+    public static final String NAME = "red";
+
+    public static final String MIN_PROPERTY = "red.min";
+    public static final String MAX_PROPERTY = "red.max";
+    public static final String MAXP_PROPERTY = "red.maxp";
+    public static final String WEIGHT_PROPERTY = "red.weight";
+
+    public static final double DEFAULT_MAXP = 0.1;
+    public static final double DEFAULT_WEIGHT = 0.002;
+
+    private double minThreshold;
+    private double maxThreshold;
+    private double maxp;
+    private double weight;
+
+    // The average queue length, and packets let through since the last
+    // drop or since the average went above the minimum (-1 below it)
+    private double average;
+    private int count;
+
+    public RedLink()
+    {
+        super();
+        minThreshold = SimulatorProperties.getDouble(MIN_PROPERTY,
+                                                     buffer / 4.0);
+        maxThreshold = SimulatorProperties.getDouble(MAX_PROPERTY,
+                                                     buffer * 3 / 4.0);
+        maxp = SimulatorProperties.getDouble(MAXP_PROPERTY, DEFAULT_MAXP);
+        weight = SimulatorProperties.getDouble(WEIGHT_PROPERTY,
+                                               DEFAULT_WEIGHT);
+        if ((minThreshold < 0) || (maxThreshold <= minThreshold))
+        {
+            throw new IllegalArgumentException("bad RED thresholds: " +
+                                               minThreshold + ", " +
+                                               maxThreshold);
+        }
+        average = 0;
+        count = -1;
+    }
+
+    protected boolean drop(int queued, double time, OSIRandom rand)
+    {
+        if (queued > 0)
+        {
+            average = (1 - weight) * average + weight * queued;
+        }
+        else
+        {
+            // Decay the average as though packets of the usual size had
+            // kept going out of an empty queue while it was idle
+            double m = Math.max(0, time - getIdleSince()) / getTransmitTime();
+            average = Math.pow(1 - weight, m) * average;
+        }
+
+        if (average < minThreshold)
+        {
+            count = -1;
+            return false;
+        }
+        if (average >= maxThreshold)
+        {
+            count = 0;
+            return true;
+        }
+
+        count++;
+        double pb = maxp * (average - minThreshold) /
+                    (maxThreshold - minThreshold);
+        double pa = (count * pb >= 1) ? 1 : pb / (1 - count * pb);
+        if (rand.nextDouble(5) < pa)
+        {
+            count = 0;
+            return true;
+        }
+        return false;
+    }
+
+    public String getName()
+    {
+        return NAME;
+    }
+}
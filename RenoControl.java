@@ -0,0 +1,75 @@
+// AIMD congestion control in the style of TCP Reno: the window starts at
+// one packet and doubles every round trip (slow start) up to ssthresh,
+// then grows by one packet per round trip.  A fast retransmit halves it;
+// a timeout halves ssthresh and starts over from one packet.
+public class RenoControl implements CongestionControl
+{
+    public static final String NAME = "reno";
+
+    protected static final double MIN_SSTHRESH = 2;
+
+    protected int maxWindow;
+    protected double cwnd;
+    protected double ssthresh;
+
+    public RenoControl(int maxWindow)
+    {
+        this.maxWindow = maxWindow;
+        cwnd = 1;
+        ssthresh = maxWindow;
+    }
+
+    public void onAck(int acked, double time, double rtt)
+    {
+        for (int i = 0; i < acked; i++)
+        {
+            if (cwnd < ssthresh)
+            {
+                cwnd += 1;
+            }
+            else
+            {
+                increase(time, rtt);
+            }
+        }
+        cwnd = Math.min(cwnd, maxWindow);
+    }
+
+    public void onFastRetransmit(double time)
+    {
+        ssthresh = Math.max(cwnd / 2, MIN_SSTHRESH);
+        cwnd = ssthresh;
+    }
+
+    public void onTimeout(double time)
+    {
+        ssthresh = Math.max(cwnd / 2, MIN_SSTHRESH);
+        cwnd = 1;
+    }
+
+    // Congestion avoidance, once per acked packet
+    protected void increase(double time, double rtt)
+    {
+        cwnd += 1 / cwnd;
+    }
+
+    public int getWindow()
+    {
+        return Math.max(1, (int)cwnd);
+    }
+
+    public double getCwnd()
+    {
+        return cwnd;
+    }
+
+    public double getSsthresh()
+    {
+        return ssthresh;
+    }
+
+    public String getName()
+    {
+        return NAME;
+    }
+}
@@ -0,0 +1,74 @@
+// Out-of-order packets held by a selective-repeat receiver.  Slots are
+// indexed by sequence number modulo the window size; sequence numbers in
+// one window are consecutive, so no two of them share a slot.  A bitmap
+// records which slots are full, so a duplicate is spotted and dropped in
+// O(1) instead of being queued again.
+public class ReorderBuffer
+{
+    private Packet[] slots;
+    private long[] occupied;
+    private int size;
+
+    public ReorderBuffer(int window)
+    {
+        slots = new Packet[window];
+        occupied = new long[(window + 63) >>> 6];
+        size = 0;
+    }
+
+    public int size()
+    {
+        return size;
+    }
+
+    public boolean isEmpty()
+    {
+        return size == 0;
+    }
+
+    public boolean contains(int seqnum)
+    {
+        int s = slot(seqnum);
+        return (occupied[s >>> 6] & (1L << s)) != 0;
+    }
+
+    // Returns false, and keeps the packet already there, if a packet with
+    // this sequence number is held
+    public boolean put(Packet p)
+    {
+        int s = slot(p.getSeqnum());
+        long bit = 1L << s;
+        if ((occupied[s >>> 6] & bit) != 0)
+        {
+            return false;
+        }
+
+        slots[s] = p;
+        occupied[s >>> 6] |= bit;
+        size++;
+        return true;
+    }
+
+    // Removes and returns the packet with sequence number "seqnum", or
+    // null if there is none
+    public Packet take(int seqnum)
+    {
+        int s = slot(seqnum);
+        long bit = 1L << s;
+        if ((occupied[s >>> 6] & bit) == 0)
+        {
+            return null;
+        }
+
+        Packet p = slots[s];
+        slots[s] = null;
+        occupied[s >>> 6] &= ~bit;
+        size--;
+        return p;
+    }
+
+    private int slot(int seqnum)
+    {
+        return seqnum % slots.length;
+    }
+}
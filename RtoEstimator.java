@@ -0,0 +1,88 @@
+// A retransmission timeout computed from measured round trips, after
+// Jacobson and Karels (RFC 6298): a smoothed RTT and its mean deviation
+// are updated with every sample, and the timeout is the smoothed RTT
+// plus four deviations.  Each timeout doubles it until a new sample
+// arrives.  Samples must come only from packets that were never
+// retransmitted (Karn's rule); the caller is the one who knows that.
+public class RtoEstimator
+{
+    private static final double ALPHA = 1.0 / 8;
+    private static final double BETA = 1.0 / 4;
+    private static final int K = 4;
+
+    private double initial;
+    private double min;
+    private double max;
+
+    private double srtt;
+    private double rttvar;
+    private double rto;
+    private boolean measured;
+
+    // "initial" is used until the first sample; the timeout is kept
+    // within [min, max]
+    public RtoEstimator(double initial, double min, double max)
+    {
+        this.initial = initial;
+        this.min = min;
+        this.max = max;
+        reset();
+    }
+
+    public void reset()
+    {
+        srtt = 0;
+        rttvar = 0;
+        measured = false;
+        rto = clamp(initial);
+    }
+
+    public void sample(double rtt)
+    {
+        if (!measured)
+        {
+            srtt = rtt;
+            rttvar = rtt / 2;
+            measured = true;
+        }
+        else
+        {
+            rttvar = (1 - BETA) * rttvar + BETA * Math.abs(srtt - rtt);
+            srtt = (1 - ALPHA) * srtt + ALPHA * rtt;
+        }
+
+        // A fresh sample also ends any backoff
+        rto = clamp(srtt + K * rttvar);
+    }
+
+    // A timer went off: double the timeout
+    public void backoff()
+    {
+        rto = clamp(rto * 2);
+    }
+
+    public double getTimeout()
+    {
+        return rto;
+    }
+
+    public double getSmoothedRTT()
+    {
+        return srtt;
+    }
+
+    public double getRTTVariation()
+    {
+        return rttvar;
+    }
+
+    public boolean hasSample()
+    {
+        return measured;
+    }
+
+    private double clamp(double t)
+    {
+        return Math.max(min, Math.min(max, t));
+    }
+}
@@ -0,0 +1,76 @@
+// The payload of B's acks: which packet made B send the ack, and a
+// selective-ack bitmap of the packets B holds beyond the cumulative ack.
+//
+//     bytes 0-3   sequence number of the packet that triggered the ack,
+//                 big-endian, or -1 if it was one B already had
+//     bytes 4-    bit i (byte 4 + i / 8, bit i % 8) is set if B holds
+//                 sequence number ack + 1 + i; trailing zero bytes are
+//                 left off, so an ack with no holes is 4 bytes long
+//
+// The bitmap covers at most MAX_SLOTS sequence numbers, all a packet
+// payload has room for; holes beyond that are left to the timers.
+public class SackBlock
+{
+    public static final int HEADER_SIZE = 4;
+    public static final int MAX_SLOTS =
+            (NetworkSimulator.MAXDATASIZE - HEADER_SIZE) * 8;
+
+    private SackBlock()
+    {
+    }
+
+    // The payload for an ack of "ack" triggered by "trigger", from B's
+    // buffer of out-of-order packets.  "window" is the size of B's
+    // receive window, which starts at ack + 1.
+    public static byte[] encode(int trigger, int ack, ReorderBuffer held,
+                                int window, int limitSeqNo)
+    {
+        byte[] bitmap = new byte[NetworkSimulator.MAXDATASIZE - HEADER_SIZE];
+        int length = 0;
+        if (!held.isEmpty())
+        {
+            int slots = Math.min(window, MAX_SLOTS);
+            for (int i = 0; i < slots; i++)
+            {
+                if (held.contains((ack + 1 + i) % limitSeqNo))
+                {
+                    bitmap[i >>> 3] |= (byte)(1 << (i & 7));
+                    length = (i >>> 3) + 1;
+                }
+            }
+        }
+
+        byte[] payload = new byte[HEADER_SIZE + length];
+        payload[0] = (byte)(trigger >>> 24);
+        payload[1] = (byte)(trigger >>> 16);
+        payload[2] = (byte)(trigger >>> 8);
+        payload[3] = (byte)trigger;
+        System.arraycopy(bitmap, 0, payload, HEADER_SIZE, length);
+        return payload;
+    }
+
+    // The triggering sequence number, or -1 if there is none
+    public static int getTrigger(byte[] payload)
+    {
+        if (payload.length < HEADER_SIZE)
+        {
+            return -1;
+        }
+
+        return ((payload[0] & 0xff) << 24) | ((payload[1] & 0xff) << 16) |
+               ((payload[2] & 0xff) << 8) | (payload[3] & 0xff);
+    }
+
+    // Number of bitmap slots the payload carries
+    public static int getSlots(byte[] payload)
+    {
+        return Math.max(0, payload.length - HEADER_SIZE) * 8;
+    }
+
+    // True if B holds sequence number ack + 1 + "i"
+    public static boolean isHeld(byte[] payload, int i)
+    {
+        int b = HEADER_SIZE + (i >>> 3);
+        return (b < payload.length) && ((payload[b] & (1 << (i & 7))) != 0);
+    }
+}
@@ -0,0 +1,134 @@
+// The figures StudentNetworkSimulator reports at the end of a run, for
+// code that wants them as values rather than as printed text
+public class SimulationStatistics
+{
+    private int originalPackets;
+    private int retransmissions;
+    private int delivered;
+    private int acksSent;
+    private int corrupted;
+    private int acksReceived;
+    private int firstAcks;
+    private double totalRTT;
+    private double totalComTime;
+    private LatencyHistogram rttHistogram;
+    private LatencyHistogram comTimeHistogram;
+
+    public SimulationStatistics(int originalPackets,
+                                int retransmissions,
+                                int delivered,
+                                int acksSent,
+                                int corrupted,
+                                int acksReceived,
+                                int firstAcks,
+                                double totalRTT,
+                                double totalComTime,
+                                LatencyHistogram rttHistogram,
+                                LatencyHistogram comTimeHistogram)
+    {
+        this.originalPackets = originalPackets;
+        this.retransmissions = retransmissions;
+        this.delivered = delivered;
+        this.acksSent = acksSent;
+        this.corrupted = corrupted;
+        this.acksReceived = acksReceived;
+        this.firstAcks = firstAcks;
+        this.totalRTT = totalRTT;
+        this.totalComTime = totalComTime;
+        this.rttHistogram = rttHistogram;
+        this.comTimeHistogram = comTimeHistogram;
+    }
+
+    // These figures and "other"'s added together, as for one protocol
+    // that did the work of both; averages and percentiles then cover
+    // every sample of the two
+    public SimulationStatistics add(SimulationStatistics other)
+    {
+        LatencyHistogram rtt = new LatencyHistogram();
+        rtt.add(rttHistogram);
+        rtt.add(other.rttHistogram);
+        LatencyHistogram comTime = new LatencyHistogram();
+        comTime.add(comTimeHistogram);
+        comTime.add(other.comTimeHistogram);
+        return new SimulationStatistics(originalPackets + other.originalPackets,
+                                        retransmissions + other.retransmissions,
+                                        delivered + other.delivered,
+                                        acksSent + other.acksSent,
+                                        corrupted + other.corrupted,
+                                        acksReceived + other.acksReceived,
+                                        firstAcks + other.firstAcks,
+                                        totalRTT + other.totalRTT,
+                                        totalComTime + other.totalComTime,
+                                        rtt, comTime);
+    }
+
+    public int getOriginalPackets()
+    {
+        return originalPackets;
+    }
+
+    public int getRetransmissions()
+    {
+        return retransmissions;
+    }
+
+    public int getDelivered()
+    {
+        return delivered;
+    }
+
+    public int getAcksSent()
+    {
+        return acksSent;
+    }
+
+    public int getCorrupted()
+    {
+        return corrupted;
+    }
+
+    public int getAcksReceived()
+    {
+        return acksReceived;
+    }
+
+    // Lost ratio = (retransmissions by A - corrupted packets) /
+    //              ((original packets by A + retransmissions by A) +
+    //               ACK packets by B)
+    public double getLostRatio()
+    {
+        return (double) (retransmissions - corrupted) /
+               (originalPackets + retransmissions + acksSent);
+    }
+
+    // Corruption ratio = corrupted packets /
+    //                    (original packets by A + ACK packets by B +
+    //                     corrupted packets)
+    public double getCorruptedRatio()
+    {
+        return (double) corrupted /
+               (originalPackets + acksSent + corrupted);
+    }
+
+    public double getAverageRTT()
+    {
+        return totalRTT / firstAcks;
+    }
+
+    public double getAverageComTime()
+    {
+        return totalComTime / originalPackets;
+    }
+
+    // Distribution of first-transmission RTT samples
+    public LatencyHistogram getRTTHistogram()
+    {
+        return rttHistogram;
+    }
+
+    // Distribution of per-packet communication times
+    public LatencyHistogram getComTimeHistogram()
+    {
+        return comTimeHistogram;
+    }
+}
@@ -0,0 +1,226 @@
+import java.io.PrintStream;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+// Trace output for a simulator run.  A message is written only if its
+// level is at most the run's level, and the check comes before any text
+// is built: the log methods take the pieces of a line (fixed text plus
+// numbers) and only join them once the message is known to be wanted.
+//
+// By default messages are queued in a ring buffer and written by a
+// background thread, so the event loop does not wait on the console; it
+// only waits if the writer falls a whole ring behind, so no message is
+// ever lost.  -Dlog=sync writes each message straight away instead.
+public class SimulatorLog
+{
+    public static final String PROPERTY = "log";
+    public static final String ASYNC = "async";
+    public static final String SYNC = "sync";
+
+    // Message levels, matching the simulator's trace levels
+    public static final int ALWAYS = 0;
+    public static final int EVENTS = 1;
+    public static final int DETAIL = 2;
+    public static final int DEBUG = 3;
+
+    private static final int CAPACITY = 1 << 16;
+
+    // Kinds of queued records
+    private static final byte TEXT = 0;
+    private static final byte TEXT_LONG = 1;
+    private static final byte TEXT_DOUBLES = 2;
+
+    private PrintStream out;
+    private int level;
+    private boolean async;
+
+    // Ring of pending records, one producer (the simulator) and one
+    // consumer (the writer thread).  Allocated with the first record, so
+    // a run that logs nothing never pays for it.
+    private byte[] kind;
+    private String[] text;
+    private String[] text2;
+    private long[] value;
+    private double[] d1;
+    private double[] d2;
+    private final AtomicLong head = new AtomicLong();
+    private final AtomicLong tail = new AtomicLong();
+
+    private Thread writer;
+    private volatile boolean closed;
+
+    public SimulatorLog(PrintStream out, int level, boolean async)
+    {
+        this.out = out;
+        this.level = level;
+        this.async = async;
+    }
+
+    public boolean isEnabled(int messageLevel)
+    {
+        return messageLevel <= level;
+    }
+
+    public void log(int messageLevel, String message)
+    {
+        if (messageLevel > level)
+        {
+            return;
+        }
+        if (!async)
+        {
+            out.println(message);
+            return;
+        }
+
+        int i = claim();
+        kind[i] = TEXT;
+        text[i] = message;
+        publish();
+    }
+
+    // Writes "message" followed by "n"
+    public void log(int messageLevel, String message, long n)
+    {
+        if (messageLevel > level)
+        {
+            return;
+        }
+        if (!async)
+        {
+            out.println(message + n);
+            return;
+        }
+
+        int i = claim();
+        kind[i] = TEXT_LONG;
+        text[i] = message;
+        value[i] = n;
+        publish();
+    }
+
+    // Writes "message", "a", "middle" and "b" in that order
+    public void log(int messageLevel, String message, double a,
+                    String middle, double b)
+    {
+        if (messageLevel > level)
+        {
+            return;
+        }
+        if (!async)
+        {
+            out.println(message + a + middle + b);
+            return;
+        }
+
+        int i = claim();
+        kind[i] = TEXT_DOUBLES;
+        text[i] = message;
+        d1[i] = a;
+        text2[i] = middle;
+        d2[i] = b;
+        publish();
+    }
+
+    // Waits until everything logged so far has been written
+    public void flush()
+    {
+        if (async)
+        {
+            while ((writer != null) && (tail.get() < head.get()))
+            {
+                LockSupport.unpark(writer);
+                Thread.yield();
+            }
+        }
+        out.flush();
+    }
+
+    // Flushes and stops the writer thread
+    public void close()
+    {
+        flush();
+        closed = true;
+        if (writer != null)
+        {
+            LockSupport.unpark(writer);
+            try
+            {
+                writer.join();
+            }
+            catch (InterruptedException ie)
+            {
+                Thread.currentThread().interrupt();
+            }
+            writer = null;
+        }
+    }
+
+    // Returns the ring index for the next record
+    private int claim()
+    {
+        // The writer is started after, which makes the ring visible to it
+        if (kind == null)
+        {
+            kind = new byte[CAPACITY];
+            text = new String[CAPACITY];
+            text2 = new String[CAPACITY];
+            value = new long[CAPACITY];
+            d1 = new double[CAPACITY];
+            d2 = new double[CAPACITY];
+        }
+        if (writer == null)
+        {
+            writer = new Thread(this::drain, "SimulatorLog");
+            writer.setDaemon(true);
+            writer.start();
+        }
+
+        long h = head.get();
+        while (h - tail.get() >= CAPACITY)
+        {
+            LockSupport.unpark(writer);
+            Thread.yield();
+        }
+        return (int)(h & (CAPACITY - 1));
+    }
+
+    private void publish()
+    {
+        head.lazySet(head.get() + 1);
+    }
+
+    private void drain()
+    {
+        StringBuilder sb = new StringBuilder();
+        while (true)
+        {
+            long t = tail.get();
+            if (t == head.get())
+            {
+                if (closed)
+                {
+                    return;
+                }
+                LockSupport.parkNanos(1000000);
+                continue;
+            }
+
+            int i = (int)(t & (CAPACITY - 1));
+            sb.setLength(0);
+            sb.append(text[i]);
+            if (kind[i] == TEXT_LONG)
+            {
+                sb.append(value[i]);
+            }
+            else if (kind[i] == TEXT_DOUBLES)
+            {
+                sb.append(d1[i]).append(text2[i]).append(d2[i]);
+            }
+            text[i] = null;
+            text2[i] = null;
+            out.println(sb);
+            tail.lazySet(t + 1);
+        }
+    }
+}
@@ -0,0 +1,246 @@
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.ToIntFunction;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+// Metrics for one simulator.  The simulator calls tick() every
+// TICK_EVENTS events; that is where rates are updated, snapshots are
+// handed to the listener and stop requests take effect, so the event
+// loop itself only pays for a counter check.
+//
+// Values read through JMX come from another thread while the run goes
+// on, so they are a best-effort view; listener calls are exact.
+//
+// A simulator running several flows reports their packet, buffer and
+// statistics figures added up.
+public class SimulatorMetrics implements SimulatorMetricsMBean
+{
+    public static final String PROPERTY = "metrics";
+    public static final String JMX = "jmx";
+    public static final String INTERVAL_PROPERTY = "metrics.interval";
+
+    public static final int TICK_EVENTS = 4096;
+
+    // Minimum wall time between updates of the recent rate
+    private static final long RATE_NANOS = 100000000L;
+
+    private static final AtomicInteger ids = new AtomicInteger();
+
+    private NetworkSimulator simulator;
+    private ObjectName name;
+
+    private MetricsListener listener;
+    private long intervalNanos;
+    private long lastSnapshot;
+
+    private long startNanos;
+    private long rateNanos;
+    private long rateEvents;
+    private volatile double recentRate;
+    private volatile boolean stopRequested;
+
+    public SimulatorMetrics(NetworkSimulator simulator)
+    {
+        this.simulator = simulator;
+    }
+
+    // Calls "l" about every "intervalMillis" of wall time during the run
+    public void setListener(MetricsListener l, long intervalMillis)
+    {
+        listener = l;
+        intervalNanos = intervalMillis * 1000000L;
+    }
+
+    boolean hasListener()
+    {
+        return listener != null;
+    }
+
+    public void register()
+    {
+        try
+        {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            name = new ObjectName("netsim:type=Simulator,name=" +
+                                  ids.incrementAndGet());
+            server.registerMBean(this, name);
+        }
+        catch (JMException e)
+        {
+            System.out.println("Warning: cannot register metrics MBean: " + e);
+            name = null;
+        }
+    }
+
+    public void unregister()
+    {
+        if (name == null)
+        {
+            return;
+        }
+        try
+        {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(name);
+        }
+        catch (JMException e)
+        {
+            System.out.println("Warning: cannot unregister metrics MBean: " + e);
+        }
+        name = null;
+    }
+
+    void start()
+    {
+        startNanos = System.nanoTime();
+        rateNanos = startNanos;
+        lastSnapshot = startNanos;
+        rateEvents = 0;
+        recentRate = 0;
+    }
+
+    // Returns true if the run should stop
+    boolean tick()
+    {
+        long now = System.nanoTime();
+        if (now - rateNanos >= RATE_NANOS)
+        {
+            long events = simulator.getEventCount();
+            recentRate = (events - rateEvents) * 1e9 / (now - rateNanos);
+            rateEvents = events;
+            rateNanos = now;
+        }
+        if ((listener != null) && (now - lastSnapshot >= intervalNanos))
+        {
+            lastSnapshot = now;
+            listener.onSnapshot(this);
+        }
+        return stopRequested;
+    }
+
+    public double getSimulatedTime()
+    {
+        return simulator.getTime();
+    }
+
+    public long getEvents()
+    {
+        return simulator.getEventCount();
+    }
+
+    public double getEventsPerSecond()
+    {
+        long elapsed = System.nanoTime() - startNanos;
+        return (elapsed > 0) ? simulator.getEventCount() * 1e9 / elapsed : 0;
+    }
+
+    // Rate over roughly the last tenth of a second, or the overall rate
+    // early in the run
+    public double getRecentEventsPerSecond()
+    {
+        double rate = recentRate;
+        return (rate > 0) ? rate : getEventsPerSecond();
+    }
+
+    public int getEventListDepth()
+    {
+        return simulator.getEventListDepth();
+    }
+
+    public int getPacketsToLayer3()
+    {
+        return sum(f -> f.getToLayer3Count());
+    }
+
+    public int getPacketsLost()
+    {
+        return sum(f -> f.getLostCount());
+    }
+
+    public int getPacketsCorrupted()
+    {
+        return sum(f -> f.getCorruptCount());
+    }
+
+    public int getPacketsDropped()
+    {
+        return sum(f -> f.getDroppedCount());
+    }
+
+    public int getSenderBufferOccupancy()
+    {
+        return sum(f -> f.getSenderBufferOccupancy());
+    }
+
+    public int getPacketsInFlight()
+    {
+        return sum(f -> f.getInFlightCount());
+    }
+
+    public int getOriginalPackets()
+    {
+        return sumStatistic(s -> s.getOriginalPackets());
+    }
+
+    public int getRetransmissions()
+    {
+        return sumStatistic(s -> s.getRetransmissions());
+    }
+
+    public int getDelivered()
+    {
+        return sumStatistic(s -> s.getDelivered());
+    }
+
+    public int getAcksSent()
+    {
+        return sumStatistic(s -> s.getAcksSent());
+    }
+
+    public int getAcksReceived()
+    {
+        return sumStatistic(s -> s.getAcksReceived());
+    }
+
+    // Total over the flows that report a value, or -1 if none does
+    private int sum(ToIntFunction<NetworkSimulator> value)
+    {
+        int total = -1;
+        for (int i = 0; i < simulator.getFlowCount(); i++)
+        {
+            int v = value.applyAsInt(simulator.getFlow(i));
+            if (v >= 0)
+            {
+                total = Math.max(total, 0) + v;
+            }
+        }
+        return total;
+    }
+
+    private int sumStatistic(ToIntFunction<SimulationStatistics> value)
+    {
+        return sum(f -> {
+            SimulationStatistics s = f.getStatistics();
+            return (s == null) ? -1 : value.applyAsInt(s);
+        });
+    }
+
+    public void stop()
+    {
+        stopRequested = true;
+    }
+
+    public String toString()
+    {
+        return String.format("metrics: time %.1f  events %d  " +
+                             "events/s %.0f  depth %d  toLayer3 %d  " +
+                             "lost %d  corrupt %d  buffer %d  in flight %d",
+                             getSimulatedTime(), getEvents(),
+                             getRecentEventsPerSecond(), getEventListDepth(),
+                             getPacketsToLayer3(), getPacketsLost(),
+                             getPacketsCorrupted(),
+                             getSenderBufferOccupancy(),
+                             getPacketsInFlight());
+    }
+}
@@ -0,0 +1,28 @@
+// Live view of a running simulation, registered with JMX as
+// netsim:type=Simulator,name=<n> when run with -Dmetrics=jmx
+public interface SimulatorMetricsMBean
+{
+    public double getSimulatedTime();
+    public long getEvents();
+    public double getEventsPerSecond();
+    public double getRecentEventsPerSecond();
+    public int getEventListDepth();
+
+    public int getPacketsToLayer3();
+    public int getPacketsLost();
+    public int getPacketsCorrupted();
+    public int getPacketsDropped();
+
+    public int getSenderBufferOccupancy();
+    public int getPacketsInFlight();
+    public int getOriginalPackets();
+    public int getRetransmissions();
+    public int getDelivered();
+    public int getAcksSent();
+    public int getAcksReceived();
+
+    // Ends the run within SimulatorMetrics.TICK_EVENTS events, or at the
+    // end of the current window in a parallel run; statistics are still
+    // printed
+    public void stop();
+}
@@ -0,0 +1,16 @@
+// System properties the simulator is tuned with that Integer.getInteger
+// has no counterpart for
+public final class SimulatorProperties
+{
+    private SimulatorProperties()
+    {
+    }
+
+    // The value of property "name" as a double, or "value" if it is not
+    // set
+    public static double getDouble(String name, double value)
+    {
+        String s = System.getProperty(name);
+        return (s == null) ? value : Double.parseDouble(s);
+    }
+}
@@ -1,3 +1,5 @@
+import java.io.*;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 
 public class StudentNetworkSimulator extends NetworkSimulator {
@@ -18,18 +20,41 @@ public class StudentNetworkSimulator extends NetworkSimulator {
      *       Starts a timer running at "entity" [A or B], which will expire in
      *       "increment" time units, causing the interrupt handler to be
      *       called.  You should only call this with A.
+     *  void rescheduleTimer(int entity, double increment):
+     *       Restarts the timer at "entity" so it expires in "increment"
+     *       time units, starting it if it is not running.
+     *  void startTimer(int entity, int id, double increment):
+     *  boolean stopTimer(int entity, int id):
+     *       Start and stop A's timer for "id", e.g. a sequence number.  Any
+     *       number of these run at once; each goes off by calling
+     *       aTimerInterrupt(id).
      *  void toLayer3(int callingEntity, Packet p)
      *       Puts the packet "p" into the network from "callingEntity" [A or B]
      *  void toLayer5(String dataSent)
+     *  void toLayer5(byte[] dataSent)
      *       Passes "dataSent" up to layer 5
      *  double getTime()
      *       Returns the current time in the simulator.  Might be useful for
      *       debugging.
      *  int getTraceLevel()
      *       Returns TraceLevel
+     *  PrintStream out
+     *       Where statistics text should be printed; System.out unless
+     *       the simulator was given another console.
+     *  SimulatorLog log
+     *       Trace output during the run.  log.log(level, ...) writes a
+     *       message only if "level" is at most the trace level; see the
+     *       SimulatorLog level constants.
      *  void printEventList()
      *       Prints the current event list to stdout.  Might be useful for
      *       debugging, but probably not.
+     *  int getSenderBufferOccupancy(), int getInFlightCount(),
+     *  SimulationStatistics getStatistics()
+     *       Override these to report the protocol's state to
+     *       SimulatorMetrics (JMX and periodic snapshots).
+     *  int getFlowId()
+     *       Returns this simulator's index among the flows sharing one
+     *       event loop (see NetworkSimulator.addFlow); 0 when run alone.
      *
      *
      *  Predefined Classes:
@@ -44,6 +69,9 @@ public class StudentNetworkSimulator extends NetworkSimulator {
      *          returns true on success, false otherwise
      *      String getData():
      *          returns the data contained in the message
+     *      byte[] getDataBytes():
+     *          returns the data as bytes, one per character; the array
+     *          must not be changed
      *  Packet: Used to encapsulate a packet
      *    Constructors:
      *      Packet (Packet p):
@@ -57,9 +85,14 @@ public class StudentNetworkSimulator extends NetworkSimulator {
      *          ack field of "ack", a checksum field of "check", and
      *          an empty payload
      *    Methods:
+     *      Packet freeze()
+     *          makes the Packet read-only and returns it; toLayer3 passes
+     *          frozen packets along without copying them
+     *      boolean isFrozen()
+     *          returns true if the Packet has been frozen
      *      boolean setSeqnum(int n)
      *          sets the Packet's sequence field to "n"
-     *          returns true on success, false otherwise
+     *          returns true on success, false otherwise (e.g. frozen)
      *      boolean setAcknum(int n)
      *          sets the Packet's ack field to "n"
      *          returns true on success, false otherwise
@@ -77,12 +110,17 @@ public class StudentNetworkSimulator extends NetworkSimulator {
      *          returns the checksum of the Packet
      *      int getPayload()
      *          returns the Packet's payload
+     *      byte[] getPayloadBytes()
+     *          returns the Packet's payload as bytes; the array must not
+     *          be changed.  There are matching byte[] versions of the
+     *          payload constructor and of setPayload.
      *
      */
 
     /*   Please use the following variables in your routines.
      *   int WindowSize  : the window size
-     *   double RxmtInterval   : the retransmission timeout
+     *   double RxmtInterval   : the retransmission timeout; the initial one
+     *                           with -Drto=adaptive
      *   int LimitSeqNo  : when sequence number reaches this value, it wraps around
      */
 
@@ -104,9 +142,20 @@ public class StudentNetworkSimulator extends NetworkSimulator {
     public static final int AckNumAck = 1;
 
     // Sender state variable
-    // Send window size
+    // Send window size; changes during the run unless the congestion
+    // control is "fixed"
     private int SWS;
 
+    // Congestion control, chosen with -Dcc=<name>; see CongestionControl
+    private CongestionControl cc;
+
+    // Where the congestion window is logged as it changes, if
+    // -Dcwndlog=<file> is given: one "time cwnd ssthresh inflight" line
+    // per change
+    public static final String CWNDLOG_PROPERTY = "cwndlog";
+    private PrintWriter cwndLog;
+    private double cwndLogged;
+
     // Last acknowledgment received
     private int LAR;
 
@@ -116,11 +165,63 @@ public class StudentNetworkSimulator extends NetworkSimulator {
     // Last packet received from layer 5
     private int LPR;
 
-    // Sender buffer
-    private ArrayList<Packet> SenderBuffer;
+    // Sender buffer, oldest unacknowledged packet first.  Sequence
+    // numbers in it are consecutive, so the packet with sequence number
+    // s is at offset calculateDiff(LAR, s) - 1.
+    private PacketRing SenderBuffer;
+
+    // Retransmission timers, chosen with -Drxmt=<mode>.  "window", the
+    // default, is the original single timer, restarted on every send,
+    // that resends the oldest packet.  "packet" gives each packet in
+    // flight a timer of its own and resends only the packets that time
+    // out (selective repeat); it needs a timeout above the round trip
+    // through a loaded channel, or queued packets are resent too.
+    public static final String RXMT_PROPERTY = "rxmt";
+    public static final String RXMT_PACKET = "packet";
+    public static final String RXMT_WINDOW = "window";
+
+    private final boolean packetTimers =
+            RXMT_PACKET.equals(System.getProperty(RXMT_PROPERTY, RXMT_WINDOW));
+
+    // Retransmission timeout, chosen with -Drto=<mode>.  "fixed", the
+    // default, always waits RxmtInterval.  "adaptive" starts from
+    // RxmtInterval and then follows the measured RTT; see RtoEstimator.
+    public static final String RTO_PROPERTY = "rto";
+    public static final String RTO_FIXED = "fixed";
+    public static final String RTO_ADAPTIVE = "adaptive";
+
+    // Bounds on the adaptive timeout: one minimal hop through the medium,
+    // and six doublings of the configured timeout
+    private static final double MinRto = 1.0;
+    private static final double MaxRtoFactor = 64;
+
+    private final boolean adaptiveRto =
+            RTO_ADAPTIVE.equals(System.getProperty(RTO_PROPERTY, RTO_FIXED));
+
+    private RtoEstimator rto;
+
+    // packets acked on their first transmission later than RxmtInterval
+    // after it, which the fixed timeout would have resent for nothing
+    private int numSpuriousAvoided;
 
-    // Sender buffer size
-    public static final int SenderBufferSize = 50;
+    // Duplicate acks, each reporting a new out-of-order arrival at B,
+    // after which A resends the packets B's SACK bitmap shows missing;
+    // -Ddupthresh=<n> changes it
+    public static final int DupAckThreshold = Integer.getInteger("dupthresh", 3);
+
+    // per sequence number: B reported holding it in a SACK bitmap
+    private boolean[] sacked;
+
+    // duplicate acks since LAR last moved, and whether they have already
+    // led to a fast retransmit
+    private int dupAcks;
+    private boolean fastRetransmitted;
+
+    // number of fast retransmissions
+    private int numFastRxm;
+
+    // Sender buffer size; -Dsenderbuffer=<n> changes it
+    public static final int SenderBufferSize = Integer.getInteger("senderbuffer", 50);
 
     // Receiver state variable
     // Receive window size
@@ -132,8 +233,9 @@ public class StudentNetworkSimulator extends NetworkSimulator {
     // Next packet expected
     private int NPE;
 
-    // Receiver buffer
-    private Queue<Packet> receiverBuffer;
+    // Receiver buffer of out-of-order packets, one slot per sequence
+    // number in the receive window
+    private ReorderBuffer receiverBuffer;
 
     private int numOfPacketToLayer5 = 0;
 
@@ -157,11 +259,12 @@ public class StudentNetworkSimulator extends NetworkSimulator {
 
     private int numFirstAck;
 
-    // record the sending time of packets
-    private HashMap<Integer, Double> sendTime;
+    // record the sending time of packets, indexed by sequence number
+    // NaN marks a sequence number with no packet outstanding
+    private double[] sendTime;
 
-    // record the sending time of packets
-    private HashMap<Integer, Double> sendTimeNoRxm;
+    // record the sending time of packets not yet retransmitted
+    private double[] sendTimeNoRxm;
 
     // total RTT
     private double RTT;
@@ -169,6 +272,15 @@ public class StudentNetworkSimulator extends NetworkSimulator {
     // total communication time
     private double ComTime;
 
+    // distributions of RTT and communication time samples
+    private LatencyHistogram rttHistogram;
+
+    private LatencyHistogram comTimeHistogram;
+
+    // checksum used to build and check packets
+    private ChecksumEngine checksumEngine =
+            ChecksumEngine.forName(System.getProperty(ChecksumEngine.PROPERTY, AdditiveChecksum.NAME));
+
     // This is the constructor.  Don't touch!
     public StudentNetworkSimulator(int numMessages,
                                    double loss,
@@ -197,7 +309,7 @@ public class StudentNetworkSimulator extends NetworkSimulator {
     // return false if the packet is corrupted
     // otherwise return true
     protected boolean checkCorruption(Packet p) {
-        return p.getChecksum() == generateChecksum(p.getSeqnum(), p.getAcknum(), p.getPayload());
+        return p.getChecksum() == generateChecksum(p.getSeqnum(), p.getAcknum(), p.getPayloadBytes());
     }
 
     // possible alternative for checksum in checkCorruption method
@@ -205,14 +317,19 @@ public class StudentNetworkSimulator extends NetworkSimulator {
     //  checksum, which consists of the sum of the (integer) sequence and ack field values, added to a
     //  character-by-character sum of the payload field of the packet (i.e., treat each character as if it
     //  were an 8-bit integer and just add them together).
+    // The sum is AdditiveChecksum, the default engine; see setChecksumEngine for the others.
     protected int generateChecksum(int seqnum, int acknum, String payload) {
-        int checksum = 0;
-        checksum += seqnum;
-        checksum += acknum;
-        for (int i = 0; i < payload.length(); i++) {
-            checksum += (byte) payload.charAt(i);
-        }
-        return checksum;
+        return generateChecksum(seqnum, acknum, payload.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    // same checksum over a byte payload
+    protected int generateChecksum(int seqnum, int acknum, byte[] payload) {
+        return checksumEngine.compute(seqnum, acknum, payload);
+    }
+
+    // select the checksum for this run; call before runSimulator()
+    public void setChecksumEngine(ChecksumEngine engine) {
+        checksumEngine = engine;
     }
 
     // This routine will be called whenever the upper layer at the sender [A]
@@ -221,21 +338,22 @@ public class StudentNetworkSimulator extends NetworkSimulator {
     // the receiving upper layer.
     protected void aOutput(Message message) {
         // drop new message when buffer is full
-        if (SenderBuffer.size() >= SenderBufferSize) {
+        if (SenderBuffer.isFull()) {
             if (traceLevel >= 2) {
-                System.out.println("Sender buffer size(" + SenderBufferSize + ") is full. New message from layer 5 is dropped.");
+                log.log(SimulatorLog.DETAIL, "Sender buffer size(" + SenderBufferSize + ") is full. New message from layer 5 is dropped.");
             }
             return;
         }
 
-        String payload = message.getData();
+        byte[] payload = message.getDataBytes();
         int acknum = AckNumData;
 
         int seqnum = LPR;
         LPR = (LPR + 1) % LimitSeqNo;
 
         int checksum = generateChecksum(seqnum, acknum, payload);
-        Packet packet = new Packet(seqnum, acknum, checksum, payload);
+        // frozen so that sends and retransmissions share it without copies
+        Packet packet = new Packet(seqnum, acknum, checksum, payload).freeze();
         SenderBuffer.add(packet);
 
         if (calculateDiff(LAR, LPS) < SWS) {
@@ -245,18 +363,24 @@ public class StudentNetworkSimulator extends NetworkSimulator {
 
     // send a pcket to layer 3 and restart timer
     protected void aSend(Packet p) {
-        // restart timer every time a packet is pushed to layer 3
-        stopTimer(A);
+        // restart timer every time a packet is pushed to layer 3; with
+        // packet timers, only that packet's own timer
         toLayer3(A, p);
-        startTimer(A, RxmtInterval);
+        double timeout = adaptiveRto ? rto.getTimeout() : RxmtInterval;
+        if (packetTimers) {
+            startTimer(A, p.getSeqnum(), timeout);
+        } else {
+            rescheduleTimer(A, timeout);
+        }
     }
 
     // send a pcket to layer 3 for the first time
     // increment LPS and statistic parameters
     protected void aFirstSend(Packet p) {
         aSend(p);
-        sendTime.put(p.getSeqnum(), getTime());
-        sendTimeNoRxm.put(p.getSeqnum(), getTime());
+        sendTime[p.getSeqnum()] = getTime();
+        sendTimeNoRxm[p.getSeqnum()] = getTime();
+        sacked[p.getSeqnum()] = false;
         LPS = (LPS + 1) % LimitSeqNo;
         numPacket += 1;
     }
@@ -268,7 +392,7 @@ public class StudentNetworkSimulator extends NetworkSimulator {
     protected void aInput(Packet packet) {
         // check if packet is corrupted
         if (!checkCorruption(packet)) {
-            System.out.println("A received a corrupted packet from B");
+            log.log(SimulatorLog.EVENTS, "A received a corrupted packet from B");
             numOfCorruptedPackets++;
             return;
         }
@@ -278,60 +402,82 @@ public class StudentNetworkSimulator extends NetworkSimulator {
         int ack = packet.getAcknum();
         // duplicate ack
         if (ack == LAR) {
-            System.out.println("A received a duplicate ack from B. Ack number:" + ack);
+            log.log(SimulatorLog.EVENTS, "A received a duplicate ack from B. Ack number:", ack);
             if (SenderBuffer.size() == 0) {
                 return;
             }
-            int realSeq = Integer.parseInt(packet.getPayload());
-            if (sendTimeNoRxm.containsKey(realSeq)) {
-                RTT += getTime() - sendTimeNoRxm.get(realSeq);
-                sendTimeNoRxm.remove(realSeq);
-                numFirstAck++;
+            byte[] sack = packet.getPayloadBytes();
+            int realSeq = SackBlock.getTrigger(sack);
+            if (realSeq >= 0 && realSeq < LimitSeqNo && !Double.isNaN(sendTimeNoRxm[realSeq])) {
+                countSpuriousAvoided(realSeq);
+                recordRTT(getTime() - sendTimeNoRxm[realSeq]);
+                sendTimeNoRxm[realSeq] = Double.NaN;
+            }
+            int highest = markSacked(sack);
+
+            // an ack without a trigger only says B got a packet twice; it
+            // is no sign of loss, and counting it would let retransmissions
+            // feed on themselves
+            if (realSeq < 0 || realSeq >= LimitSeqNo) {
+                return;
+            }
+            dupAcks++;
+            if (dupAcks >= DupAckThreshold && !fastRetransmitted && LPS != LAR) {
+                fastRetransmit(highest);
             }
-            sendTimeNoRxm.remove(SenderBuffer.get(0).getSeqnum());
-            aSend(SenderBuffer.get(0));
-            numRxm += 1;
         }
         // new ack
         else {
-            System.out.println("A received a new ack from B. Ack number:" + ack);
+            log.log(SimulatorLog.EVENTS, "A received a new ack from B. Ack number:", ack);
             int diff = calculateDiff(LAR, ack);
 
-            if (diff == 1 && sendTimeNoRxm.containsKey(ack)) {
-                RTT += getTime() - sendTimeNoRxm.get(ack);
-                sendTimeNoRxm.remove(ack);
-                numFirstAck++;
+            if (diff == 1 && !Double.isNaN(sendTimeNoRxm[ack])) {
+                countSpuriousAvoided(ack);
+                recordRTT(getTime() - sendTimeNoRxm[ack]);
+                sendTimeNoRxm[ack] = Double.NaN;
             }
 
             for (int i = 1; i <= diff; i++) {
-                System.out.println("current time: " + getTime() + " start time" + sendTime.get((LAR + i) % LimitSeqNo));
-                ComTime += getTime() - sendTime.get((LAR + i) % LimitSeqNo);
-                sendTime.remove((LAR + i) % LimitSeqNo);
+                int seq = (LAR + i) % LimitSeqNo;
+                sacked[seq] = false;
+                if (packetTimers) {
+                    stopTimer(A, seq);
+                }
+                if (!Double.isNaN(sendTimeNoRxm[seq])) {
+                    countSpuriousAvoided(seq);
+                }
+                log.log(SimulatorLog.DETAIL, "current time: ", getTime(), " start time", sendTime[seq]);
+                // an ack can cover a slot with nothing outstanding; skip it
+                if (!Double.isNaN(sendTime[seq])) {
+                    ComTime += getTime() - sendTime[seq];
+                    comTimeHistogram.record(getTime() - sendTime[seq]);
+                    sendTime[seq] = Double.NaN;
+                }
             }
 
 
             // update LAR
             LAR = ack;
+            dupAcks = 0;
+            fastRetransmitted = false;
+            cc.onAck(diff, getTime(), rto.hasSample() ? rto.getSmoothedRTT() : RxmtInterval);
+            windowChanged();
 
             // remove acknowledged packets in buffer
-            SenderBuffer.subList(0, diff).clear();
+            SenderBuffer.removeFirst(diff);
+            markSacked(packet.getPayloadBytes());
             // stop timer when the last sent packet gets ack
             if (SenderBuffer.size() == 0) {
-                stopTimer(A);
-                return;
-            }
-
-            // get the buffer index of LPS packet
-            int LPSindex = 0;
-            for (int i = 0; i < SenderBuffer.size(); i++) {
-                if (SenderBuffer.get(i).getSeqnum() == LPS) {
-                    LPSindex = i;
-                    break;
+                if (!packetTimers) {
+                    stopTimer(A);
                 }
+                return;
             }
 
-            // send new packets starting from LPS+1
-            for (int i = LPSindex + 1; i < Math.min(SenderBuffer.size(), LPSindex + diff + 1); i++) {
+            // send new packets starting from LPS+1 while the window has
+            // room; the packets still in flight come first, so the one
+            // after LPS is at the offset equal to their number
+            for (int i = calculateDiff(LAR, LPS); i < SenderBuffer.size() && i < SWS; i++) {
                 aFirstSend(SenderBuffer.get(i));
             }
 
@@ -342,29 +488,148 @@ public class StudentNetworkSimulator extends NetworkSimulator {
     // timer interrupt). You'll probably want to use this routine to control 
     // the retransmission of packets. See startTimer() and stopTimer(), above,
     // for how the timer is started and stopped. 
+    // With packet timers, aTimerInterrupt(int) is called instead.
     protected void aTimerInterrupt() {
+        if (adaptiveRto) {
+            rto.backoff();
+        }
+        cc.onTimeout(getTime());
+        windowChanged();
         aSend(SenderBuffer.get(0));
-        sendTimeNoRxm.remove(SenderBuffer.get(0).getSeqnum());
+        sendTimeNoRxm[SenderBuffer.get(0).getSeqnum()] = Double.NaN;
         numRxm += 1;
     }
 
+    // The timer of the packet with sequence number "seq" went off; resend
+    // just that packet
+    protected void aTimerInterrupt(int seq) {
+        // the packets in flight are the first ones in the buffer
+        int offset = calculateDiff(LAR, seq) - 1;
+        if (offset < 0 || offset >= calculateDiff(LAR, LPS)) {
+            return;
+        }
+
+        // back off once per round, when the oldest packet times out,
+        // rather than once for every packet in flight
+        if (offset == 0) {
+            if (adaptiveRto) {
+                rto.backoff();
+            }
+            cc.onTimeout(getTime());
+            windowChanged();
+        }
+        aSend(SenderBuffer.get(offset));
+        sendTimeNoRxm[seq] = Double.NaN;
+        numRxm += 1;
+    }
+
+    // Marks the packets in flight that B's SACK bitmap shows it holds,
+    // stopping their timers.  Returns the buffer offset of the highest
+    // one, or -1 if there is none.
+    private int markSacked(byte[] sack) {
+        int slots = Math.min(SackBlock.getSlots(sack), calculateDiff(LAR, LPS));
+        int highest = -1;
+        for (int i = 0; i < slots; i++) {
+            if (SackBlock.isHeld(sack, i)) {
+                int seq = (LAR + 1 + i) % LimitSeqNo;
+                if (!sacked[seq]) {
+                    sacked[seq] = true;
+                    if (packetTimers) {
+                        stopTimer(A, seq);
+                    }
+                }
+                highest = i;
+            }
+        }
+        return highest;
+    }
+
+    // Resends the packets in flight below the highest one B holds that B
+    // does not have, or just the oldest if B has reported none
+    private void fastRetransmit(int highest) {
+        fastRetransmitted = true;
+        cc.onFastRetransmit(getTime());
+        windowChanged();
+        for (int i = 0; i <= Math.max(highest, 0); i++) {
+            Packet p = SenderBuffer.get(i);
+            if (!sacked[p.getSeqnum()]) {
+                log.log(SimulatorLog.EVENTS, "A fast retransmits packet. seq number:", p.getSeqnum());
+                sendTimeNoRxm[p.getSeqnum()] = Double.NaN;
+                aSend(p);
+                numRxm += 1;
+                numFastRxm += 1;
+            }
+        }
+    }
+
+    // add one first-transmission RTT sample; only these feed the
+    // adaptive timeout (Karn's rule)
+    private void recordRTT(double sample) {
+        RTT += sample;
+        rttHistogram.record(sample);
+        numFirstAck++;
+        // kept in every mode: congestion control uses the smoothed RTT
+        rto.sample(sample);
+    }
+
+    // pick up the congestion window after the congestion control saw
+    // an event, and log it
+    private void windowChanged() {
+        int window = Math.min(WindowSize, cc.getWindow());
+        if (cwndLog != null && (window != SWS || cc.getCwnd() != cwndLogged)) {
+            cwndLog.println(getTime() + " " + cc.getCwnd() + " " + cc.getSsthresh() + " " + calculateDiff(LAR, LPS));
+            cwndLogged = cc.getCwnd();
+        }
+        SWS = window;
+    }
+
+    // "seq" has been acked and was never retransmitted
+    private void countSpuriousAvoided(int seq) {
+        if (adaptiveRto && getTime() - sendTimeNoRxm[seq] > RxmtInterval) {
+            numSpuriousAvoided++;
+        }
+    }
+
     // This routine will be called once, before any of your other A-side
     // routines are called. It can be used to do any required
     // initialization (e.g. of member variables you add to control the state
     // of entity A).
     protected void aInit() {
-        SWS = WindowSize;
+        cc = CongestionControl.forName(System.getProperty(CongestionControl.PROPERTY, FixedWindow.NAME), WindowSize);
+        SWS = Math.min(WindowSize, cc.getWindow());
+        // with several flows in one run, only the first one logs its window
+        String cwndLogFile = System.getProperty(CWNDLOG_PROPERTY);
+        if (cwndLogFile != null && getFlowId() == 0) {
+            try {
+                cwndLog = new PrintWriter(new BufferedWriter(new FileWriter(cwndLogFile)));
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            cwndLog.println("# time cwnd ssthresh inflight (" + cc.getName() + ")");
+            cwndLog.println(getTime() + " " + cc.getCwnd() + " " + cc.getSsthresh() + " 0");
+            cwndLogged = cc.getCwnd();
+        }
         LAR = LimitSeqNo - 1;
         LPS = LimitSeqNo - 1;
         LPR = FirstSeqNo;
-        SenderBuffer = new ArrayList<>();
+        SenderBuffer = new PacketRing(SenderBufferSize);
+        rto = new RtoEstimator(RxmtInterval, MinRto, MaxRtoFactor * RxmtInterval);
+        numSpuriousAvoided = 0;
+        sacked = new boolean[LimitSeqNo];
+        dupAcks = 0;
+        fastRetransmitted = false;
+        numFastRxm = 0;
 
         numPacket = 0;
         numRxm = 0;
         numAck = 0;
         numFirstAck = 0;
-        sendTime = new HashMap<>();
-        sendTimeNoRxm = new HashMap<>();
+        sendTime = new double[LimitSeqNo];
+        sendTimeNoRxm = new double[LimitSeqNo];
+        Arrays.fill(sendTime, Double.NaN);
+        Arrays.fill(sendTimeNoRxm, Double.NaN);
+        rttHistogram = new LatencyHistogram();
+        comTimeHistogram = new LatencyHistogram();
     }
 
     // This routine will be called whenever a packet sent from the B-side
@@ -381,21 +646,20 @@ public class StudentNetworkSimulator extends NetworkSimulator {
         int acknum = packet.getAcknum();
         int seqnum = packet.getSeqnum();
         int checksum = packet.getChecksum();
-        String payload = packet.getPayload();
+        byte[] payload = packet.getPayloadBytes();
 
         // if packet corrupted, drop it.
         if (!checkCorruption(packet)) {
-            System.out.println("B received a corrupted packet from A");
+            log.log(SimulatorLog.EVENTS, "B received a corrupted packet from A");
             numOfCorruptedPackets++;
             return;
         }
 
         // if pacekt is out of range drop and ack
         if (!checkRWS(NPE, LPA, seqnum)) {
-            System.out.println("B received a duplicate packet from A. seq number:" + seqnum);
+            log.log(SimulatorLog.EVENTS, "B received a duplicate packet from A. seq number:", seqnum);
             int bAck = NPE - 1 < 0 ? LimitSeqNo + (NPE - 1) : NPE - 1;
-            toLayer3(B, new Packet(SEQNUMBER_FROM_B_TO_A, bAck, generateChecksum(SEQNUMBER_FROM_B_TO_A, bAck, ""), ""));
-            numOfAckSentByB++;
+            bSendAck(bAck, -1);
             return;
         }
 
@@ -405,43 +669,47 @@ public class StudentNetworkSimulator extends NetworkSimulator {
             // peek out the first item in the buffer
             // if the first item is NPE, poll the first item, update variable to NPE, update NPE and LPA to NPE+1 and LPA+1, send to layer 5
             // send ack number
-            System.out.println("B received a new packet from A. seq number:" + seqnum);
-            String backPayload = seqnum + "";
+            log.log(SimulatorLog.EVENTS, "B received a new packet from A. seq number:", seqnum);
             toLayer5(payload);
             numOfPacketToLayer5++;
             int bAcknum = NPE;
             NPE = updateWindow(NPE, LimitSeqNo);
             LPA = updateWindow(LPA, LimitSeqNo);
-            while (!receiverBuffer.isEmpty()) {
-                Packet next = receiverBuffer.peek();
-                if (next.getSeqnum() == NPE) {
-                    toLayer5(next.getPayload());
-                    numOfPacketToLayer5++;
-                    bAcknum = NPE;
-                    NPE = updateWindow(NPE, LimitSeqNo);
-                    LPA = updateWindow(LPA, LimitSeqNo);
-                    receiverBuffer.poll();
-                } else break;
+            // deliver the run of buffered packets that now follows NPE
+            Packet next;
+            while (!receiverBuffer.isEmpty() && (next = receiverBuffer.take(NPE)) != null) {
+                toLayer5(next.getPayloadBytes());
+                numOfPacketToLayer5++;
+                bAcknum = NPE;
+                NPE = updateWindow(NPE, LimitSeqNo);
+                LPA = updateWindow(LPA, LimitSeqNo);
             }
 
 
-            Packet ackPacket = new Packet(SEQNUMBER_FROM_B_TO_A, bAcknum, generateChecksum(SEQNUMBER_FROM_B_TO_A, bAcknum, backPayload), backPayload);
-            toLayer3(B, ackPacket);
-            numOfAckSentByB++;
+            bSendAck(bAcknum, seqnum);
 
 
         }
         // out of order packet received.
         else {
-            System.out.println("B received an out of order packet from A. seq number:" + seqnum);
-            receiverBuffer.add(packet);
+            log.log(SimulatorLog.EVENTS, "B received an out of order packet from A. seq number:", seqnum);
+            // a packet already held is a duplicate; it is still acked
+            receiverBuffer.put(packet);
             int bAck = NPE - 1 < 0 ? LimitSeqNo + (NPE - 1) : NPE - 1;
-            toLayer3(B, new Packet(SEQNUMBER_FROM_B_TO_A, bAck, generateChecksum(SEQNUMBER_FROM_B_TO_A, bAck, packet.getSeqnum() + ""), packet.getSeqnum() + ""));
-            numOfAckSentByB++;
+            bSendAck(bAck, seqnum);
         }
 
     }
 
+    // send a cumulative ack for "ack", triggered by packet "trigger" (-1
+    // for a packet B already had), with a SACK bitmap of the packets held
+    // beyond it
+    private void bSendAck(int ack, int trigger) {
+        byte[] sack = SackBlock.encode(trigger, ack, receiverBuffer, RWS, LimitSeqNo);
+        toLayer3(B, new Packet(SEQNUMBER_FROM_B_TO_A, ack, generateChecksum(SEQNUMBER_FROM_B_TO_A, ack, sack), sack).freeze());
+        numOfAckSentByB++;
+    }
+
     // check if current packet seqnumber is in the window
     // return true if it is in the window and false if it is not
     protected boolean checkRWS(int NPE, int LPA, int currentSequenceNumber) {
@@ -464,20 +732,18 @@ public class StudentNetworkSimulator extends NetworkSimulator {
         RWS = WindowSize; // receive window size
         LPA = WindowSize - 1; // last packet acceptable
         NPE = 0; // next packet expected
-        receiverBuffer = new LinkedList<>();
-//        receiverBuffer = new PriorityQueue<>((a, b) -> {
-//            int seqNumA = a.getSeqnum();
-//            int seqNumB = b.getSeqnum();
-//            if (seqNumA < NPE && seqNumB < NPE) {
-//                return seqNumA - seqNumB;
-//            } else if (seqNumA < NPE) {
-//                return seqNumB - seqNumA;
-//            } else if (seqNumB < NPE) {
-//                return seqNumA - seqNumB;
-//            } else {
-//                return seqNumA - seqNumB;
-//            }
-//        });
+        receiverBuffer = new ReorderBuffer(RWS);
+    }
+
+    // The window log is closed however the run ends, even if it throws
+    public void runSimulator() {
+        try {
+            super.runSimulator();
+        } finally {
+            if (cwndLog != null) {
+                cwndLog.close();
+            }
+        }
     }
 
     // Use to print final statistics
@@ -489,22 +755,59 @@ public class StudentNetworkSimulator extends NetworkSimulator {
     // retransmissions by A) + ACK packets by B)
     protected void Simulation_done() {
         // TO PRINT THE STATISTICS, FILL IN THE DETAILS BY PUTTING VARIBALE NAMES. DO NOT CHANGE THE FORMAT OF PRINTED OUTPUT
-        System.out.println("\n\n===============STATISTICS=======================");
-        System.out.println("Number of original packets transmitted by A:" + numPacket);
-        System.out.println("Number of retransmissions by A:" + numRxm);
-        System.out.println("Number of data packets delivered to layer 5 at B:" + numOfPacketToLayer5);
-        System.out.println("Number of ACK packets sent by B:" + numOfAckSentByB);
-        System.out.println("Number of corrupted packets:" + numOfCorruptedPackets);
-        System.out.println("Ratio of lost packets:" + ((double) (numRxm - numOfCorruptedPackets) / (numPacket + numRxm + numOfAckSentByB)));
-        System.out.println("Ratio of corrupted packets:" + ((double) (numOfCorruptedPackets) / (numPacket + numOfAckSentByB + numOfCorruptedPackets)));
-        System.out.println("Average RTT:" + RTT / numFirstAck);
-        System.out.println("Average communication time:" + ComTime / numPacket);
-        System.out.println("==================================================");
+        SimulationStatistics stats = getStatistics();
+        out.println("\n\n===============STATISTICS=======================");
+        out.println("Number of original packets transmitted by A:" + stats.getOriginalPackets());
+        out.println("Number of retransmissions by A:" + stats.getRetransmissions());
+        out.println("Number of data packets delivered to layer 5 at B:" + stats.getDelivered());
+        out.println("Number of ACK packets sent by B:" + stats.getAcksSent());
+        out.println("Number of corrupted packets:" + stats.getCorrupted());
+        out.println("Ratio of lost packets:" + stats.getLostRatio());
+        out.println("Ratio of corrupted packets:" + stats.getCorruptedRatio());
+        out.println("Average RTT:" + stats.getAverageRTT());
+        out.println("Average communication time:" + stats.getAverageComTime());
+        out.println("==================================================");
 
         // PRINT YOUR OWN STATISTIC HERE TO CHECK THE CORRECTNESS OF YOUR PROGRAM
-        System.out.println("\nEXTRA:");
+        out.println("\nEXTRA:");
         // EXAMPLE GIVEN BELOW
-        System.out.println("Number of ACK packets received by A :" + numAck);
+        out.println("Number of ACK packets received by A :" + stats.getAcksReceived());
+        out.println("Checksum :" + checksumEngine.getName());
+        printPercentiles("RTT", stats.getRTTHistogram());
+        printPercentiles("Communication time", stats.getComTimeHistogram());
+        out.println("Fast retransmissions by A :" + numFastRxm + " (after " + DupAckThreshold + " duplicate ACKs)");
+        out.println("Goodput (messages delivered per time unit) :" + stats.getDelivered() / getTime());
+        if (!cc.getName().equals(FixedWindow.NAME)) {
+            out.println("Congestion control :" + cc.getName() + " (cwnd at end " + cc.getCwnd()
+                    + ", ssthresh " + cc.getSsthresh() + ")");
+        }
+        if (adaptiveRto) {
+            out.println("Adaptive RTO at end :" + rto.getTimeout() + " (SRTT " + rto.getSmoothedRTT()
+                    + ", RTTVAR " + rto.getRTTVariation() + ")");
+            out.println("Spurious retransmits avoided vs fixed timeout :" + numSpuriousAvoided);
+        }
+    }
+
+    // The statistics printed by Simulation_done, as values
+    public SimulationStatistics getStatistics() {
+        return new SimulationStatistics(numPacket, numRxm, numOfPacketToLayer5, numOfAckSentByB,
+                numOfCorruptedPackets, numAck, numFirstAck, RTT, ComTime,
+                rttHistogram, comTimeHistogram);
+    }
+
+    // Read by SimulatorMetrics
+    protected int getSenderBufferOccupancy() {
+        return SenderBuffer.size();
+    }
+
+    protected int getInFlightCount() {
+        return calculateDiff(LAR, LPS);
+    }
+
+    private void printPercentiles(String name, LatencyHistogram h) {
+        out.println(name + " p50/p99/p99.9 :" + h.getPercentile(50) + " / "
+                + h.getPercentile(99) + " / " + h.getPercentile(99.9)
+                + " (max " + h.getMax() + ")");
     }
 
 }
@@ -0,0 +1,65 @@
+// One set of simulator parameters in a ParameterSweep
+public class SweepPoint
+{
+    private int nsim;
+    private double loss;
+    private double corrupt;
+    private double delay;
+    private int windowsize;
+    private double timeout;
+    private int seed;
+
+    public SweepPoint(int nsim, double loss, double corrupt, double delay,
+                      int windowsize, double timeout, int seed)
+    {
+        this.nsim = nsim;
+        this.loss = loss;
+        this.corrupt = corrupt;
+        this.delay = delay;
+        this.windowsize = windowsize;
+        this.timeout = timeout;
+        this.seed = seed;
+    }
+
+    // A simulator for this point, with tracing off
+    public StudentNetworkSimulator createSimulator()
+    {
+        return new StudentNetworkSimulator(nsim, loss, corrupt, delay, 0,
+                                           seed, windowsize, timeout);
+    }
+
+    public int getNsim()
+    {
+        return nsim;
+    }
+
+    public double getLoss()
+    {
+        return loss;
+    }
+
+    public double getCorrupt()
+    {
+        return corrupt;
+    }
+
+    public double getDelay()
+    {
+        return delay;
+    }
+
+    public int getWindowsize()
+    {
+        return windowsize;
+    }
+
+    public double getTimeout()
+    {
+        return timeout;
+    }
+
+    public int getSeed()
+    {
+        return seed;
+    }
+}
@@ -0,0 +1,335 @@
+import java.util.Arrays;
+
+// A hierarchical timing wheel of timers in simulated time, one per
+// non-negative id (a sequence number, say).  Deadlines are rounded up to
+// a whole number of ticks.  Level 0 has a slot for each of the next
+// SLOTS ticks, level 1 a slot for each SLOTS-tick span after that, and so
+// on; a timer is filed at the level of the highest tick digit in which it
+// differs from the current tick, and moves down a level each time the
+// wheel reaches its slot.  Timers are linked into their slots by id, so
+// starting, restarting and cancelling are O(1) with no allocation.
+//
+// The wheel does not run by itself.  nextTime() says when something next
+// has to happen, and advance() moves the wheel to a time, after which
+// pollExpired() hands out the timers that went off, earliest tick first.
+public class TimingWheel
+{
+    private static final int SLOT_BITS = 8;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int MASK = SLOTS - 1;
+    private static final int LEVELS = 4;
+
+    // Pseudo-slots for timers that are not in the wheel proper
+    private static final int NONE = -1;
+    private static final int EXPIRED = LEVELS * SLOTS;
+    private static final int OVERFLOW = EXPIRED + 1;
+
+    private double tickSize;
+
+    // Last tick the wheel was advanced to
+    private long now;
+
+    // Per-id timer fields
+    private long[] tick;
+    private int[] slot;
+    private int[] next;
+    private int[] prev;
+
+    // Heads and tails of the slot lists, including EXPIRED and OVERFLOW,
+    // and a bitmap per level of the slots that are not empty
+    private int[] head;
+    private int[] tail;
+    private long[] occupied;
+    private int size;
+
+    public TimingWheel(double tickSize)
+    {
+        this.tickSize = tickSize;
+        now = 0;
+
+        tick = new long[16];
+        slot = new int[16];
+        next = new int[16];
+        prev = new int[16];
+        Arrays.fill(slot, NONE);
+
+        head = new int[OVERFLOW + 1];
+        tail = new int[OVERFLOW + 1];
+        Arrays.fill(head, -1);
+        Arrays.fill(tail, -1);
+        occupied = new long[LEVELS * SLOTS / 64];
+        size = 0;
+    }
+
+    public double getTickSize()
+    {
+        return tickSize;
+    }
+
+    // Timers running or expired but not yet polled
+    public int size()
+    {
+        return size;
+    }
+
+    public boolean isRunning(int id)
+    {
+        return (id < slot.length) && (slot[id] != NONE) &&
+               (slot[id] != EXPIRED);
+    }
+
+    // Starts the timer for "id" so it goes off at "deadline", moving it if
+    // it is already running.  The deadline must not be before the time
+    // the wheel was last advanced to.
+    public void start(int id, double deadline)
+    {
+        if (id >= slot.length)
+        {
+            grow(id);
+        }
+        if (slot[id] != NONE)
+        {
+            unlink(id);
+        }
+        else
+        {
+            size++;
+        }
+
+        // Allow for rounding in deadline / tickSize before rounding up
+        long t = (long)Math.ceil(deadline / tickSize - 1e-9);
+        tick[id] = Math.max(t, now + 1);
+        file(id);
+    }
+
+    // Returns false if the timer was not running
+    public boolean cancel(int id)
+    {
+        if ((id >= slot.length) || (slot[id] == NONE))
+        {
+            return false;
+        }
+
+        boolean running = slot[id] != EXPIRED;
+        unlink(id);
+        slot[id] = NONE;
+        size--;
+        return running;
+    }
+
+    // The time of the next tick at which a timer may go off or timers
+    // have to move down a level, or infinity if no timer is running.
+    // Calls to advance() only need to be made at these times.
+    public double nextTime()
+    {
+        long t = nextTick();
+        return (t == Long.MAX_VALUE) ? Double.POSITIVE_INFINITY
+                                     : t * tickSize;
+    }
+
+    // Moves the wheel forward to "time", which must be a value returned
+    // by nextTime() or any time before the next of them.  Timers due by
+    // then become available from pollExpired().
+    public void advance(double time)
+    {
+        long target = Math.round(time / tickSize);
+        while (true)
+        {
+            long t = nextTick();
+            if (t > target)
+            {
+                // Nothing is filed for the ticks in between, so the wheel
+                // can skip straight to the target
+                now = Math.max(now, target);
+                return;
+            }
+
+            now = t;
+
+            // Bring timers down from the levels whose slot starts here,
+            // highest first
+            for (int level = LEVELS - 1; level > 0; level--)
+            {
+                if ((now & ((1L << (SLOT_BITS * level)) - 1)) == 0)
+                {
+                    cascade(level * SLOTS +
+                            (int)((now >>> (SLOT_BITS * level)) & MASK));
+                }
+            }
+            if ((now & ((1L << (SLOT_BITS * LEVELS)) - 1)) == 0)
+            {
+                cascade(OVERFLOW);
+            }
+
+            // Everything in this level 0 slot is due now
+            int s = (int)(now & MASK);
+            while (head[s] != -1)
+            {
+                int id = head[s];
+                unlink(id);
+                append(EXPIRED, id);
+            }
+        }
+    }
+
+    // Returns the id of the next timer that went off, or -1 if there is
+    // none.  Its timer is no longer running.
+    public int pollExpired()
+    {
+        int id = head[EXPIRED];
+        if (id == -1)
+        {
+            return -1;
+        }
+
+        unlink(id);
+        slot[id] = NONE;
+        size--;
+        return id;
+    }
+
+    private long nextTick()
+    {
+        // Level 0 slots are single ticks in the current rotation, so any
+        // of them comes before the start of a slot on a higher level
+        for (int level = 0; level < LEVELS; level++)
+        {
+            int shift = SLOT_BITS * level;
+            int current = (int)((now >>> shift) & MASK);
+            int s = nextOccupied(level, current + 1);
+            if (s != -1)
+            {
+                long above = (now >>> (shift + SLOT_BITS)) << SLOT_BITS;
+                return (above | s) << shift;
+            }
+        }
+
+        if (head[OVERFLOW] != -1)
+        {
+            int shift = SLOT_BITS * LEVELS;
+            return ((now >>> shift) + 1) << shift;
+        }
+
+        return Long.MAX_VALUE;
+    }
+
+    // First non-empty slot of "level" at or after "from", or -1
+    private int nextOccupied(int level, int from)
+    {
+        if (from >= SLOTS)
+        {
+            return -1;
+        }
+
+        int base = level * SLOTS;
+        int word = (base + from) >>> 6;
+        long bits = occupied[word] & (-1L << from);
+        int last = (base + SLOTS - 1) >>> 6;
+        while (true)
+        {
+            if (bits != 0)
+            {
+                return (word << 6) + Long.numberOfTrailingZeros(bits) - base;
+            }
+            if (++word > last)
+            {
+                return -1;
+            }
+            bits = occupied[word];
+        }
+    }
+
+    private void cascade(int s)
+    {
+        // Detach the list first; overflow timers can be filed right back
+        int id = head[s];
+        head[s] = -1;
+        tail[s] = -1;
+        if (s < EXPIRED)
+        {
+            occupied[s >>> 6] &= ~(1L << s);
+        }
+        while (id != -1)
+        {
+            int following = next[id];
+            file(id);
+            id = following;
+        }
+    }
+
+    // Puts "id" in the slot for its tick, relative to the current tick
+    private void file(int id)
+    {
+        long diff = tick[id] ^ now;
+        if (diff == 0)
+        {
+            append(EXPIRED, id);
+            return;
+        }
+
+        int level = (63 - Long.numberOfLeadingZeros(diff)) / SLOT_BITS;
+        if (level >= LEVELS)
+        {
+            append(OVERFLOW, id);
+            return;
+        }
+        append(level * SLOTS + (int)((tick[id] >>> (SLOT_BITS * level)) & MASK),
+               id);
+    }
+
+    private void append(int s, int id)
+    {
+        slot[id] = s;
+        next[id] = -1;
+        prev[id] = tail[s];
+        if (tail[s] == -1)
+        {
+            head[s] = id;
+            if (s < EXPIRED)
+            {
+                occupied[s >>> 6] |= 1L << s;
+            }
+        }
+        else
+        {
+            next[tail[s]] = id;
+        }
+        tail[s] = id;
+    }
+
+    private void unlink(int id)
+    {
+        int s = slot[id];
+        if (prev[id] == -1)
+        {
+            head[s] = next[id];
+        }
+        else
+        {
+            next[prev[id]] = next[id];
+        }
+        if (next[id] == -1)
+        {
+            tail[s] = prev[id];
+        }
+        else
+        {
+            prev[next[id]] = prev[id];
+        }
+        if ((head[s] == -1) && (s < EXPIRED))
+        {
+            occupied[s >>> 6] &= ~(1L << s);
+        }
+    }
+
+    private void grow(int id)
+    {
+        int n = Math.max(id + 1, slot.length * 2);
+        int old = slot.length;
+        tick = Arrays.copyOf(tick, n);
+        slot = Arrays.copyOf(slot, n);
+        next = Arrays.copyOf(next, n);
+        prev = Arrays.copyOf(prev, n);
+        Arrays.fill(slot, old, n, NONE);
+    }
+}
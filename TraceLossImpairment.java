@@ -0,0 +1,95 @@
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.BitSet;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Loses packets as a recorded pattern says: the file named by
+// -Dimpairment.file holds one 0 (delivered) or 1 (lost) per packet,
+// separated by white space, with "#" starting a comment.  Each channel
+// goes through the pattern from the start, one entry per packet, and
+// starts over at the end.  Corruption stays independent, as in
+// IidImpairment.
+public class TraceLossImpairment extends IidImpairment
+{
+    public static final String NAME = "trace";
+    public static final String FILE_PROPERTY = "impairment.file";
+
+    // Read once per file, however many channels use it
+    private static final ConcurrentHashMap<String, Pattern> patterns =
+        new ConcurrentHashMap<String, Pattern>();
+
+    private static class Pattern
+    {
+        private BitSet lost = new BitSet();
+        private int length;
+    }
+
+    private Pattern pattern;
+    private int next;
+
+    public TraceLossImpairment(double corrupt)
+    {
+        super(0, corrupt);
+        String file = System.getProperty(FILE_PROPERTY);
+        if (file == null)
+        {
+            throw new IllegalArgumentException("-D" + FILE_PROPERTY +
+                                               " must name a loss pattern");
+        }
+        pattern = patterns.computeIfAbsent(file, TraceLossImpairment::read);
+        next = 0;
+    }
+
+    public boolean isLost(double time, OSIRandom rand)
+    {
+        boolean lost = pattern.lost.get(next);
+        next = (next + 1) % pattern.length;
+        return lost;
+    }
+
+    public String getName()
+    {
+        return NAME;
+    }
+
+    private static Pattern read(String file)
+    {
+        Pattern p = new Pattern();
+        try
+        {
+            for (String line : Files.readAllLines(Paths.get(file)))
+            {
+                int comment = line.indexOf('#');
+                if (comment >= 0)
+                {
+                    line = line.substring(0, comment);
+                }
+                for (String token : line.trim().split("\\s+"))
+                {
+                    if (token.isEmpty())
+                    {
+                        continue;
+                    }
+                    if (!token.equals("0") && !token.equals("1"))
+                    {
+                        throw new IllegalArgumentException(
+                            file + ": not 0 or 1: \"" + token + "\"");
+                    }
+                    p.lost.set(p.length++, token.equals("1"));
+                }
+            }
+        }
+        catch (IOException e)
+        {
+            throw new UncheckedIOException(e);
+        }
+
+        if (p.length == 0)
+        {
+            throw new IllegalArgumentException(file + ": empty loss pattern");
+        }
+        return p;
+    }
+}
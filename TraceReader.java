@@ -0,0 +1,232 @@
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.HashMap;
+
+// Reads a trace written by TraceRecorder, so a run can be replayed or
+// queried without simulating it again.
+//
+// Usage: java TraceReader file [command]
+//   print                 every record (the default)
+//   sends SEQ             every time an A (of any flow) sent seqnum SEQ
+//   retransmissions SEQ   every send of SEQ by an A that was a
+//                         retransmission; see Retransmissions
+//   summary               record counts
+public class TraceReader
+{
+    public interface Visitor
+    {
+        // Called for each record in order; "r" is reused between calls
+        public void visit(TraceRecord r);
+    }
+
+    // Slots of the summary counts after the record types
+    private static final int LOST_COUNT = NetworkSimulator.TIMERWHEEL + 1;
+    private static final int OTHER_COUNT = LOST_COUNT + 1;
+
+    private FileChannel channel;
+    private long records;
+
+    public TraceReader(String path) throws IOException
+    {
+        channel = FileChannel.open(Paths.get(path), StandardOpenOption.READ);
+        long size = channel.size();
+
+        byte[] header = new byte[TraceRecorder.HEADER_SIZE];
+        if (size >= TraceRecorder.HEADER_SIZE)
+        {
+            channel.map(FileChannel.MapMode.READ_ONLY, 0,
+                        TraceRecorder.HEADER_SIZE).get(header);
+        }
+        if (!Arrays.equals(Arrays.copyOf(header, TraceRecorder.MAGIC.length),
+                           TraceRecorder.MAGIC) ||
+            (header[TraceRecorder.MAGIC.length] != TraceRecorder.VERSION))
+        {
+            channel.close();
+            throw new IOException(path + " is not a trace file");
+        }
+
+        records = (size - TraceRecorder.HEADER_SIZE) /
+                  TraceRecorder.RECORD_SIZE;
+    }
+
+    public long getRecordCount()
+    {
+        return records;
+    }
+
+    // Replays every record in order
+    public void replay(Visitor visitor) throws IOException
+    {
+        // Map at most this many records at a time
+        long chunk = Integer.MAX_VALUE / TraceRecorder.RECORD_SIZE;
+        TraceRecord r = new TraceRecord();
+
+        for (long first = 0; first < records; first += chunk)
+        {
+            long n = Math.min(chunk, records - first);
+            MappedByteBuffer map = channel.map(
+                FileChannel.MapMode.READ_ONLY,
+                TraceRecorder.HEADER_SIZE + first * TraceRecorder.RECORD_SIZE,
+                n * TraceRecorder.RECORD_SIZE);
+            map.order(ByteOrder.LITTLE_ENDIAN);
+
+            for (long i = 0; i < n; i++)
+            {
+                r.set(map.getDouble(), map.getInt(), map.getInt(),
+                      map.getInt(), map.getInt(), map.getInt(), map.getInt());
+                visitor.visit(r);
+            }
+        }
+    }
+
+    public void close() throws IOException
+    {
+        channel.close();
+    }
+
+    // Tells A's retransmissions from new packets that reuse a sequence
+    // number, by following each flow's acks.  A sequence number is
+    // outstanding from the send of a new packet until an ack that got
+    // through intact covers it, and a send of an outstanding number is a
+    // retransmission.  Acks are cumulative, so one for "n" covers n and
+    // everything sent before it.  The channel keeps each flow's packets
+    // in order, so the acks reaching A match B's sends that were not
+    // lost, one for one, which says which of them arrived corrupted.
+    public static class Retransmissions
+    {
+        private static class Flow
+        {
+            // Outstanding sequence numbers, oldest first
+            private ArrayDeque<Integer> outstanding = new ArrayDeque<Integer>();
+
+            // Whether each ack on its way to A was corrupted
+            private ArrayDeque<Boolean> acks = new ArrayDeque<Boolean>();
+        }
+
+        private HashMap<Integer, Flow> flows = new HashMap<Integer, Flow>();
+
+        // Call for every record in order; true if "r" is a retransmission
+        // by an A.  Sends are A's if A sent them, events if they are for A.
+        public boolean isRetransmission(TraceRecord r)
+        {
+            Flow f = flows.computeIfAbsent(r.getEntity() >> 1, k -> new Flow());
+            boolean atA = (r.getEntity() & 1) == NetworkSimulator.A;
+
+            if (r.isSend())
+            {
+                if (!atA)
+                {
+                    if (!r.isLost())
+                    {
+                        f.acks.add(r.isCorrupted());
+                    }
+                    return false;
+                }
+                if (f.outstanding.contains(r.getSeqnum()))
+                {
+                    return true;
+                }
+                f.outstanding.add(r.getSeqnum());
+                return false;
+            }
+
+            if (atA && (r.getType() == NetworkSimulator.FROMLAYER3))
+            {
+                Boolean corrupted = f.acks.poll();
+                if ((corrupted != null) && !corrupted &&
+                    f.outstanding.contains(r.getAcknum()))
+                {
+                    while (f.outstanding.poll() != r.getAcknum())
+                    {
+                    }
+                }
+            }
+            return false;
+        }
+    }
+
+    public static void main(String[] argv) throws IOException
+    {
+        if (argv.length < 1)
+        {
+            System.out.println("Usage: java TraceReader file " +
+                               "[print | sends SEQ | retransmissions SEQ | " +
+                               "summary]");
+            System.exit(1);
+        }
+
+        TraceReader reader = new TraceReader(argv[0]);
+        String command = (argv.length > 1) ? argv[1] : "print";
+
+        if (command.equals("print"))
+        {
+            reader.replay(r -> System.out.println(r));
+        }
+        else if (command.equals("sends"))
+        {
+            int seq = Integer.parseInt(argv[2]);
+            reader.replay(r -> {
+                if (r.isSend() && ((r.getEntity() & 1) == NetworkSimulator.A) &&
+                    (r.getSeqnum() == seq))
+                {
+                    System.out.println(r);
+                }
+            });
+        }
+        else if (command.equals("retransmissions"))
+        {
+            int seq = Integer.parseInt(argv[2]);
+            Retransmissions finder = new Retransmissions();
+            reader.replay(r -> {
+                if (finder.isRetransmission(r) && (r.getSeqnum() == seq))
+                {
+                    System.out.println(r);
+                }
+            });
+        }
+        else if (command.equals("summary"))
+        {
+            // Indexed by record type; LOST_COUNT counts lost sends, and
+            // OTHER_COUNT any type this reader does not know
+            long[] counts = new long[OTHER_COUNT + 1];
+            reader.replay(r -> {
+                int type = r.getType();
+                counts[((type >= 0) && (type < LOST_COUNT)) ? type
+                                                            : OTHER_COUNT]++;
+                if (r.isLost())
+                {
+                    counts[LOST_COUNT]++;
+                }
+            });
+            System.out.println("records:        " + reader.getRecordCount());
+            System.out.println("timer events:   " +
+                               counts[NetworkSimulator.TIMERINTERRUPT]);
+            System.out.println("wheel events:   " +
+                               counts[NetworkSimulator.TIMERWHEEL]);
+            System.out.println("layer 5 events: " +
+                               counts[NetworkSimulator.FROMLAYER5]);
+            System.out.println("layer 3 events: " +
+                               counts[NetworkSimulator.FROMLAYER3]);
+            System.out.println("sends:          " +
+                               counts[TraceRecorder.SEND]);
+            System.out.println("lost sends:     " + counts[LOST_COUNT]);
+            if (counts[OTHER_COUNT] > 0)
+            {
+                System.out.println("unknown types:  " + counts[OTHER_COUNT]);
+            }
+        }
+        else
+        {
+            System.out.println("Unknown command " + command);
+            System.exit(1);
+        }
+
+        reader.close();
+    }
+}
@@ -0,0 +1,101 @@
+// One record of a binary trace; see TraceRecorder for the fields
+public class TraceRecord
+{
+    private double time;
+    private int type;
+    private int entity;
+    private int seqnum;
+    private int acknum;
+    private int checksum;
+    private int flags;
+
+    public void set(double time, int type, int entity, int seqnum,
+                    int acknum, int checksum, int flags)
+    {
+        this.time = time;
+        this.type = type;
+        this.entity = entity;
+        this.seqnum = seqnum;
+        this.acknum = acknum;
+        this.checksum = checksum;
+        this.flags = flags;
+    }
+
+    public double getTime()
+    {
+        return time;
+    }
+
+    public int getType()
+    {
+        return type;
+    }
+
+    public int getEntity()
+    {
+        return entity;
+    }
+
+    public int getSeqnum()
+    {
+        return seqnum;
+    }
+
+    public int getAcknum()
+    {
+        return acknum;
+    }
+
+    public int getChecksum()
+    {
+        return checksum;
+    }
+
+    public boolean hasPacket()
+    {
+        return (flags & TraceRecorder.HAS_PACKET) != 0;
+    }
+
+    public boolean isSend()
+    {
+        return type == TraceRecorder.SEND;
+    }
+
+    public boolean isLost()
+    {
+        return (flags & TraceRecorder.LOST) != 0;
+    }
+
+    public boolean isCorrupted()
+    {
+        return (flags & TraceRecorder.CORRUPTED) != 0;
+    }
+
+    public String toString()
+    {
+        String s;
+        if (isSend())
+        {
+            s = "SEND  time: " + time + "  from: " + entity;
+        }
+        else
+        {
+            s = "EVENT time: " + time + "  type: " + type +
+                "  entity: " + entity;
+        }
+        if (hasPacket())
+        {
+            s += "  seqnum: " + seqnum + "  acknum: " + acknum +
+                 "  checksum: " + checksum;
+        }
+        if (isLost())
+        {
+            s += "  LOST";
+        }
+        if (isCorrupted())
+        {
+            s += "  CORRUPTED";
+        }
+        return s;
+    }
+}
@@ -0,0 +1,115 @@
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+
+// Writes a compact binary trace of a run: every dispatched event, and
+// every packet handed to toLayer3 (including the ones the medium loses,
+// which never become events).  Records go into a file mapped in large
+// chunks ahead of the data, so recording is a few stores into memory.
+// TraceReader reads the file back.
+//
+// File layout: an 8-byte header ("NSTRACE" and a version byte), then
+// fixed-size little-endian records of RECORD_SIZE bytes:
+//
+//     double time
+//     int    type      TIMERINTERRUPT, FROMLAYER5, FROMLAYER3, TIMERWHEEL
+//                      or SEND
+//     int    entity    the entity the event is for, or the sender
+//     int    seqnum    \
+//     int    acknum     } of the packet; 0 if the record has none
+//     int    checksum  /
+//     int    flags     HAS_PACKET, LOST, CORRUPTED
+public class TraceRecorder
+{
+    public static final String PROPERTY = "tracefile";
+
+    public static final byte[] MAGIC = {'N', 'S', 'T', 'R', 'A', 'C', 'E'};
+    public static final byte VERSION = 1;
+    public static final int HEADER_SIZE = 8;
+    public static final int RECORD_SIZE = 32;
+
+    // Record type for a packet sent into the medium
+    public static final int SEND = 3;
+
+    public static final int HAS_PACKET = 1;
+    public static final int LOST = 2;
+    public static final int CORRUPTED = 4;
+
+    private static final long CHUNK_SIZE = 32L << 20;
+
+    private FileChannel channel;
+    private MappedByteBuffer map;
+    private long written;
+
+    public TraceRecorder(String path) throws IOException
+    {
+        channel = FileChannel.open(Paths.get(path),
+                                   StandardOpenOption.CREATE,
+                                   StandardOpenOption.READ,
+                                   StandardOpenOption.WRITE,
+                                   StandardOpenOption.TRUNCATE_EXISTING);
+        mapFrom(0);
+        map.put(MAGIC);
+        map.put(VERSION);
+        written = HEADER_SIZE;
+    }
+
+    public void recordEvent(double time, int type, int entity, Packet p)
+        throws IOException
+    {
+        record(time, type, entity, p, 0);
+    }
+
+    public void recordSend(double time, int entity, Packet p, boolean lost,
+                           boolean corrupted) throws IOException
+    {
+        record(time, SEND, entity, p,
+               (lost ? LOST : 0) | (corrupted ? CORRUPTED : 0));
+    }
+
+    public void close() throws IOException
+    {
+        map.force();
+        map = null;
+        channel.truncate(written);
+        channel.close();
+    }
+
+    private void record(double time, int type, int entity, Packet p,
+                        int flags) throws IOException
+    {
+        if (map.remaining() < RECORD_SIZE)
+        {
+            mapFrom(written);
+        }
+
+        map.putDouble(time);
+        map.putInt(type);
+        map.putInt(entity);
+        if (p == null)
+        {
+            map.putInt(0);
+            map.putInt(0);
+            map.putInt(0);
+            map.putInt(flags);
+        }
+        else
+        {
+            map.putInt(p.getSeqnum());
+            map.putInt(p.getAcknum());
+            map.putInt(p.getChecksum());
+            map.putInt(flags | HAS_PACKET);
+        }
+        written += RECORD_SIZE;
+    }
+
+    private void mapFrom(long position) throws IOException
+    {
+        map = channel.map(FileChannel.MapMode.READ_WRITE, position,
+                          CHUNK_SIZE);
+        map.order(ByteOrder.LITTLE_ENDIAN);
+    }
+}
@@ -0,0 +1,72 @@
+package netsim;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Checksums of a full-size payload: each ChecksumEngine on its own, and
+// StudentNetworkSimulator.generateChecksum, as the protocol calls it for
+// every packet it sends and receives.  (ChecksumBenchmark, in the
+// simulator, compares how much damage the engines catch.)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class ChecksumEngineBenchmark
+{
+    @Param({AdditiveChecksum.NAME, InternetChecksum.NAME, Crc32cChecksum.NAME})
+    public String engine;
+
+    private ChecksumEngine checksum;
+    private StudentNetworkSimulator simulator;
+    private byte[] bytes;
+    private String text;
+    private int seq;
+
+    @Setup
+    public void setUp()
+    {
+        checksum = ChecksumEngine.forName(engine);
+        simulator = new StudentNetworkSimulator(1, 0.0, 0.0, 1.0, 0, 1, 8,
+                                                30.0);
+        simulator.setConsole(new PrintStream(OutputStream.nullOutputStream()));
+        simulator.setChecksumEngine(checksum);
+
+        bytes = new byte[NetworkSimulator.MAXDATASIZE];
+        Arrays.fill(bytes, (byte)'q');
+        text = new String(bytes);
+        seq = 0;
+    }
+
+    @Benchmark
+    public int compute()
+    {
+        return checksum.compute(seq++, 0, bytes);
+    }
+
+    @Benchmark
+    public int generateChecksumBytes()
+    {
+        return simulator.generateChecksum(seq++, 0, bytes);
+    }
+
+    @Benchmark
+    public int generateChecksumString()
+    {
+        return simulator.generateChecksum(seq++, 0, text);
+    }
+}
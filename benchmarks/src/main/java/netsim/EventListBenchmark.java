@@ -0,0 +1,110 @@
+package netsim;
+
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// The EventList operations the event loop and the protocol's timers use,
+// on each implementation, with the list held at several depths.  Every
+// operation leaves the depth as it found it.
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class EventListBenchmark
+{
+    @Param({NetworkSimulator.EVENTLIST_HEAP, NetworkSimulator.EVENTLIST_VECTOR})
+    public String kind;
+
+    @Param({"16", "1024", "65536"})
+    public int depth;
+
+    // Packet events only, and the same with A's timer in it
+    private EventList list;
+    private EventList timers;
+
+    private Event next = new Event(0, 0, 0);
+    private int i;
+
+    @Setup
+    public void fill()
+    {
+        list = filledList();
+        timers = filledList();
+        timers.add(0.5, NetworkSimulator.TIMERINTERRUPT, NetworkSimulator.A,
+                   null);
+        i = 0;
+    }
+
+    // The main loop's step: take the next event, and add one in its place
+    // further on
+    @Benchmark
+    public double addRemoveNext()
+    {
+        list.removeNext(next);
+        list.add(next.getTime() + depth, next.getType(), next.getEntity(),
+                 next.getPacket());
+        return next.getTime();
+    }
+
+    @Benchmark
+    public boolean rescheduleTimer()
+    {
+        return timers.rescheduleTimer(NetworkSimulator.A, nextTimerTime());
+    }
+
+    @Benchmark
+    public boolean cancelTimerAdd()
+    {
+        boolean cancelled = timers.cancelTimer(NetworkSimulator.A);
+        timers.add(nextTimerTime(), NetworkSimulator.TIMERINTERRUPT,
+                   NetworkSimulator.A, null);
+        return cancelled;
+    }
+
+    @Benchmark
+    public Event removeTimerAdd()
+    {
+        Event timer = timers.removeTimer(NetworkSimulator.A);
+        timers.add(nextTimerTime(), NetworkSimulator.TIMERINTERRUPT,
+                   NetworkSimulator.A, null);
+        return timer;
+    }
+
+    @Benchmark
+    public double getLastPacketTime()
+    {
+        return timers.getLastPacketTime(i++ & 1);
+    }
+
+    // Spread over the list, so the timer lands at different places
+    private double nextTimerTime()
+    {
+        return (i++ * 7919) % depth + 0.5;
+    }
+
+    // "depth" packet events spread over [0, depth)
+    private EventList filledList()
+    {
+        EventList l = NetworkSimulator.createEventList(kind);
+        OSIRandom rand = new OSIRandom(1);
+        for (int k = 0; k < depth; k++)
+        {
+            int type = (k % 3 == 0) ? NetworkSimulator.FROMLAYER5
+                                    : NetworkSimulator.FROMLAYER3;
+            l.add(rand.nextDouble(0) * depth, type, k & 1, null);
+        }
+        return l;
+    }
+}
@@ -0,0 +1,59 @@
+package netsim;
+
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// Copying a Packet with each kind of payload, against passing a frozen
+// one along as toLayer3 does
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(2)
+@State(Scope.Thread)
+public class PacketBenchmark
+{
+    private Packet text;
+    private Packet raw;
+    private Packet frozen;
+
+    @Setup
+    public void setUp()
+    {
+        char[] chars = new char[NetworkSimulator.MAXDATASIZE];
+        Arrays.fill(chars, 'q');
+        text = new Packet(1, 0, 0, new String(chars));
+        byte[] bytes = new byte[NetworkSimulator.MAXDATASIZE];
+        Arrays.fill(bytes, (byte)'q');
+        raw = new Packet(1, 0, 0, bytes);
+        frozen = new Packet(1, 0, 0, bytes).freeze();
+    }
+
+    @Benchmark
+    public Packet copyStringPayload()
+    {
+        return new Packet(text);
+    }
+
+    @Benchmark
+    public Packet copyBytePayload()
+    {
+        return new Packet(raw);
+    }
+
+    @Benchmark
+    public Packet passFrozen()
+    {
+        return frozen.isFrozen() ? frozen : new Packet(frozen);
+    }
+}
@@ -0,0 +1,78 @@
+package netsim;
+
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.concurrent.TimeUnit;
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+// End-to-end runSimulator() throughput.  The score is whole runs a
+// second; the "events" line under it is events dispatched a second, which
+// is the figure to compare across message counts and window sizes.
+//
+// A run of 10^7 messages takes on the order of a minute, and every
+// iteration does at least one; narrow the grid with -p messages=... for a
+// quick look.
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 1, time = 1)
+@Measurement(iterations = 3, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RunBenchmark
+{
+    @Param({"10000", "100000", "1000000", "10000000"})
+    public int messages;
+
+    @Param({"8", "64", "1024"})
+    public int window;
+
+    @Param({"0.0"})
+    public double loss;
+
+    // Reported by JMH as a rate, per second of the iteration
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    @State(Scope.Thread)
+    public static class Events
+    {
+        public long events;
+
+        @Setup(Level.Iteration)
+        public void reset()
+        {
+            events = 0;
+        }
+    }
+
+    private PrintStream quiet;
+
+    @Setup
+    public void setUp()
+    {
+        quiet = new PrintStream(OutputStream.nullOutputStream());
+    }
+
+    @Benchmark
+    public long run(Events counter)
+    {
+        StudentNetworkSimulator simulator =
+            new StudentNetworkSimulator(messages, loss, 0.0, 1.0, 0, 1, window,
+                                        4.0 * window + 20);
+        simulator.setDeliverySink(new NullDeliverySink());
+        simulator.setConsole(quiet);
+        simulator.runSimulator();
+        counter.events += simulator.getEventCount();
+        return simulator.getEventCount();
+    }
+}